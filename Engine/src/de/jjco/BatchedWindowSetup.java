@@ -0,0 +1,107 @@
+package de.jjco;
+
+import org.lwjgl.opengl.GL11;
+
+import de.jjco.components.CompNode;
+import de.jjco.components.DrawableNode;
+import de.jjco.graphics.SpriteBatch;
+
+/**
+ * A WindowSetup that draws through a SpriteBatch.  Node transforms are
+ * worked out on the CPU instead of pushing an OpenGL matrix for every
+ * node, and sprites are drawn with one draw call per texture instead
+ * of one per sprite.  Nodes that can not add themselves to the batch
+ * are still drawn the usual way, after the batch is flushed.
+ * <p>
+ * Pass this to the Window constructor to use it.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see DrawableNode#draw(SpriteBatch, double)
+ */
+public class BatchedWindowSetup extends WindowSetup.WindowSetupImpl {
+	private SpriteBatch batch = new SpriteBatch();
+	
+	/**
+	 * Creates a batched window setup.
+	 */
+	public BatchedWindowSetup() {
+		
+	}
+	
+	/**
+	 * Gets the batch this draws through.  Its statistics cover the
+	 * last viewport that was rendered.
+	 * 
+	 * @return the batch
+	 */
+	public SpriteBatch getBatch() {
+		return (batch);
+	}
+	
+	@Override
+	public void destroyWindow() {
+		batch.destroy();
+	}
+	
+	@Override
+	public void renderSceneNode(CompNode sn) {
+		batch.begin();
+		render(sn);
+		batch.end();
+	}
+	
+	private void render(CompNode sn) {
+		batch.push();
+		batch.translate(sn.getX(), sn.getY());
+		batch.rotate(sn.getAngle());
+		
+		if (sn instanceof DrawableNode) {
+			DrawableNode dn = (DrawableNode) sn;
+			synchronized (sn.getUnsafeLock()) {
+				Window w = sn.getWindow();
+				if (sn.getParent() != null && w != null) {
+					double alpha = w.getInterpolationAlpha();
+					if (!dn.draw(batch, alpha)) {
+						batch.flush();
+						GL11.glPushMatrix();
+						batch.applyTransform();
+						dn.draw(alpha);
+						GL11.glPopMatrix();
+					}
+				}
+			}
+		}
+		
+		for (CompNode child : sn.getChildren()) {
+			render(child);
+		}
+		
+		batch.pop();
+	}
+	
+	@Override
+	public void renderSnapshot(RenderSnapshot snap) {
+		batch.begin();
+		
+		for (int i = 0; i < snap.size(); i++) {
+			batch.push();
+			batch.translate(snap.getX(i), snap.getY(i));
+			batch.rotate(snap.getAngle(i));
+			
+			if (!snap.draw(i, batch)) {
+				batch.flush();
+				GL11.glPushMatrix();
+				batch.applyTransform();
+				snap.draw(i);
+				GL11.glPopMatrix();
+			}
+			
+			for (int n = snap.getEnd(i); n > 0; n--) {
+				batch.pop();
+			}
+		}
+		
+		batch.end();
+	}
+}
@@ -1,9 +1,18 @@
 package de.jjco;
 
 import java.lang.reflect.Method;
-import java.util.Map.Entry;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.jjco.ListenFor.Delivery;
 
 /**
  * The EventFactory routes all events sent from the engine.
@@ -28,12 +37,39 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * EventFactory.addListener(new TestClass());<br>
  * EventFactory.issueEvent("testEvent", "Hello, world!");
  * </code>
+ * <p>
+ * Listener methods are bound to their {@link Event} once, when
+ * <code>addListener</code> is called.  Issuing an {@link Event}
+ * directly skips the name lookup, and the fixed argument versions
+ * of <code>issueEvent</code> do not allocate anything when nobody
+ * is listening.  The engine's own input events reuse their boxed
+ * arguments, so synchronous listeners of them do not allocate either,
+ * though they are still called through reflection.
+ * <p>
+ * Listeners may ask to be called on their Window's thread or on a
+ * worker thread with {@link ListenFor#delivery()}.  These events are
+ * queued in bounded queues, and are dropped if the queue is full.  For
+ * coalescing events, like "mouseMoved", a listener that hasn't caught up
+ * only receives the latest event for each Window.
  * 
  * @author Jared Jonas (bluesun212)
  * @version Revision 1
  */
 public class EventFactory {
-	private static ConcurrentHashMap<String, ConcurrentLinkedQueue<MethodRef>> listeners = new ConcurrentHashMap<String, ConcurrentLinkedQueue<MethodRef>>();
+	private static final Listener[] NONE = new Listener[0];
+	private static final Object lock = new Object();
+	private static final int QUEUE_SIZE = 1024;
+	private static final int POOL_BATCH = 64;
+	
+	private static volatile ExecutorService pool;
+	private static AtomicLong dropped = new AtomicLong();
+	private static ConcurrentHashMap<Class<?>, Method[]> listenerMethods = new ConcurrentHashMap<Class<?>, Method[]>();
+	private static ThreadLocal<ArgFrames> frames = new ThreadLocal<ArgFrames>() {
+		@Override
+		protected ArgFrames initialValue() {
+			return (new ArgFrames());
+		}
+	};
 	
 	/**
 	 * Adds all listeners in an object.
@@ -41,17 +77,40 @@ public class EventFactory {
 	 * @param l the object
 	 */
 	public static void addListener(Object l) {
-		for (Method m : l.getClass().getMethods()) {
-			if (m.isAnnotationPresent(ListenFor.class)) {
+		Method[] methods = getListenerMethods(l.getClass());
+		synchronized (lock) {
+			for (Method m : methods) {
 				ListenFor lf = m.getAnnotation(ListenFor.class);
+				Event e = Event.get(lf.value());
 				
-				if (!listeners.containsKey(lf.value())) {
-					listeners.put(lf.value(), new ConcurrentLinkedQueue<MethodRef>());
+				Listener[] old = e.listeners;
+				Listener[] ls = Arrays.copyOf(old, old.length + 1);
+				ls[old.length] = new Listener(l, m, lf.delivery());
+				e.listeners = ls;
+			}
+		}
+	}
+	
+	private static Method[] getListenerMethods(Class<?> c) {
+		Method[] ret = listenerMethods.get(c);
+		if (ret == null) {
+			ArrayList<Method> found = new ArrayList<Method>();
+			for (Method m : c.getMethods()) {
+				if (m.isAnnotationPresent(ListenFor.class)) {
+					// Skip the access check on every invoke
+					try {
+						m.setAccessible(true);
+					} catch (SecurityException e) {}
+					
+					found.add(m);
 				}
-				
-				listeners.get(lf.value()).add(new MethodRef(l, m));
 			}
+			
+			ret = found.toArray(new Method[found.size()]);
+			listenerMethods.put(c, ret);
 		}
+		
+		return (ret);
 	}
 	
 	/**
@@ -60,61 +119,460 @@ public class EventFactory {
 	 * @param l the object containing the listeners.
 	 */
 	public static void removeListener(Object l) {
-		for (Entry<String, ConcurrentLinkedQueue<MethodRef>> ents : listeners.entrySet()) {
-			ConcurrentLinkedQueue<MethodRef> meths = ents.getValue();
-			
-			for (MethodRef mr : meths) {
-				if (mr.parent == l) {
-					meths.remove(mr);
+		synchronized (lock) {
+			for (Event e : Event.events.values()) {
+				Listener[] old = e.listeners;
+				Listener[] ls = new Listener[old.length];
+				int n = 0;
+				
+				for (Listener ref : old) {
+					if (ref.parent != l) {
+						ls[n++] = ref;
+					}
+				}
+				
+				if (n != old.length) {
+					e.listeners = n == 0 ? NONE : Arrays.copyOf(ls, n);
 				}
-			}
-			
-			if (meths.isEmpty()) {
-				listeners.remove(ents.getKey());
 			}
 		}
 	}
 	
 	/**
 	 * Invokes all listeners that are listening for
-	 * the specified event.  
+	 * the specified event.
 	 * 
 	 * @param name the event name
 	 * @param args the arguments to the event
 	 */
 	public static void issueEvent(String name, Object... args) {
-		EngineLog.log("Issuing event " + name);
-		
-		ConcurrentLinkedQueue<MethodRef> refs = listeners.get(name);
-		if (refs == null) {
+		Event e = Event.find(name);
+		if (e == null) {
+			EngineLog.log("Issuing event " + name);
 			return;
 		}
 		
-		for (MethodRef ref : refs) {
+		fire(e, args);
+	}
+	
+	/**
+	 * Invokes all listeners that are listening for
+	 * the specified event.
+	 * 
+	 * @param e the event
+	 * @param args the arguments to the event
+	 */
+	public static void issueEvent(Event e, Object... args) {
+		fire(e, args);
+	}
+	
+	/**
+	 * Invokes all listeners that are listening for
+	 * the specified event, which has no arguments.
+	 * 
+	 * @param e the event
+	 */
+	public static void issueEvent(Event e) {
+		EngineLog.log(e.message);
+		
+		Listener[] ls = e.listeners;
+		if (ls.length != 0) {
+			ArgFrames f = frames.get();
+			Object[] args = f.acquire(0);
+			
 			try {
-				ref.func.invoke(ref.parent, args);
-			} catch (Exception e) {
-				StringBuilder sb = new StringBuilder("[");
-				for (Object arg : args) {
-					sb.append(arg + ", ");
+				dispatch(e, ls, args);
+			} finally {
+				f.release(args);
+			}
+		}
+	}
+	
+	/**
+	 * Invokes all listeners that are listening for
+	 * the specified event.
+	 * 
+	 * @param e the event
+	 * @param a the first argument
+	 */
+	public static void issueEvent(Event e, Object a) {
+		EngineLog.log(e.message);
+		
+		Listener[] ls = e.listeners;
+		if (ls.length != 0) {
+			ArgFrames f = frames.get();
+			Object[] args = f.acquire(1);
+			args[0] = a;
+			
+			try {
+				dispatch(e, ls, args);
+			} finally {
+				f.release(args);
+			}
+		}
+	}
+	
+	/**
+	 * Invokes all listeners that are listening for
+	 * the specified event.
+	 * 
+	 * @param e the event
+	 * @param a the first argument
+	 * @param b the second argument
+	 */
+	public static void issueEvent(Event e, Object a, Object b) {
+		EngineLog.log(e.message);
+		
+		Listener[] ls = e.listeners;
+		if (ls.length != 0) {
+			ArgFrames f = frames.get();
+			Object[] args = f.acquire(2);
+			args[0] = a;
+			args[1] = b;
+			
+			try {
+				dispatch(e, ls, args);
+			} finally {
+				f.release(args);
+			}
+		}
+	}
+	
+	/**
+	 * Invokes all listeners that are listening for
+	 * the specified event.
+	 * 
+	 * @param e the event
+	 * @param a the first argument
+	 * @param b the second argument
+	 * @param c the third argument
+	 */
+	public static void issueEvent(Event e, Object a, Object b, Object c) {
+		EngineLog.log(e.message);
+		
+		Listener[] ls = e.listeners;
+		if (ls.length != 0) {
+			ArgFrames f = frames.get();
+			Object[] args = f.acquire(3);
+			args[0] = a;
+			args[1] = b;
+			args[2] = c;
+			
+			try {
+				dispatch(e, ls, args);
+			} finally {
+				f.release(args);
+			}
+		}
+	}
+	
+	private static void fire(Event e, Object[] args) {
+		EngineLog.log(e.message);
+		
+		Listener[] ls = e.listeners;
+		if (ls.length != 0) {
+			dispatch(e, ls, args);
+		}
+	}
+	
+	/**
+	 * Gets the number of queued events that were dropped because
+	 * their queue was full.
+	 * 
+	 * @return the dropped events
+	 */
+	public static long getDroppedEvents() {
+		return (dropped.get());
+	}
+	
+	static EventQueue createQueue() {
+		return (new EventQueue(QUEUE_SIZE));
+	}
+	
+	private static void dispatch(Event e, Listener[] ls, Object[] args) {
+		for (int i = 0; i < ls.length; i++) {
+			Listener ref = ls[i];
+			
+			if (ref.mode == Delivery.SYNC) {
+				invoke(e, ref, args);
+			} else {
+				EventQueue q = null;
+				if (ref.mode == Delivery.WINDOW && args.length != 0 && args[0] instanceof Window) {
+					q = ((Window) args[0]).events;
 				}
 				
-				sb.delete(sb.length() - 2, sb.length()).append("]");
-				
-				EngineLog.logException("Could not issue event \"" + name + "\" to " + ref);
-				EngineLog.logException("Args provided: " + sb + "\nException:");
-				EngineLog.logException(e);
+				queue(e, ref, args, q);
+			}
+		}
+	}
+	
+	private static void queue(Event e, Listener ref, Object[] args, EventQueue q) {
+		Object key = args.length != 0 && args[0] != null ? args[0] : ref;
+		Object[] copy = args.clone();
+		
+		// Replace the event that's still waiting, if there is one
+		if (e.coalescing) {
+			QueuedEvent old = ref.pending.get(key);
+			if (old != null) {
+				Object[] cur = old.get();
+				if (cur != null && old.compareAndSet(cur, copy)) {
+					return;
+				}
+			}
+		}
+		
+		QueuedEvent qe = new QueuedEvent(e, ref, key, copy);
+		if (e.coalescing) {
+			ref.pending.put(key, qe);
+		}
+		
+		boolean added;
+		if (q != null) {
+			added = q.offer(qe);
+		} else {
+			added = ref.poolEvents.offer(qe);
+			if (added && ref.draining.compareAndSet(false, true)) {
+				getPool().execute(ref);
+			}
+		}
+		
+		if (!added) {
+			ref.pending.remove(key, qe);
+			if (dropped.getAndIncrement() == 0) {
+				EngineLog.logWarning("Event queue is full, dropping \"" + e.getName() + "\" for " + ref);
 			}
 		}
 	}
 	
-	private static class MethodRef {
+	private static ExecutorService getPool() {
+		if (pool == null) {
+			synchronized (lock) {
+				if (pool == null) {
+					pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+						private AtomicInteger count = new AtomicInteger();
+						
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r);
+							t.setName("ToXicity Event Worker " + count.incrementAndGet());
+							t.setDaemon(true);
+							return (t);
+						}
+					});
+				}
+			}
+		}
+		
+		return (pool);
+	}
+	
+	private static void invoke(Event e, Listener ref, Object[] args) {
+		try {
+			ref.func.invoke(ref.parent, args);
+		} catch (Exception ex) {
+			StringBuilder sb = new StringBuilder("[");
+			for (Object arg : args) {
+				sb.append(arg + ", ");
+			}
+			
+			if (args.length != 0) {
+				sb.delete(sb.length() - 2, sb.length());
+			}
+			
+			sb.append("]");
+			
+			EngineLog.logException("Could not issue event \"" + e.getName() + "\" to " + ref);
+			EngineLog.logException("Args provided: " + sb + "\nException:");
+			EngineLog.logException(ex);
+		}
+	}
+	
+	/**
+	 * An interned event name.  Every event issued by the engine has
+	 * a constant here, named after its entry in the event list.
+	 * 
+	 * @author Jared Jonas (bluesun212)
+	 * @version Revision 1
+	 */
+	public static final class Event {
+		private static ConcurrentHashMap<String, Event> events = new ConcurrentHashMap<String, Event>();
+		private static int nextID;
+		
+		public static final Event MONITOR_CONNECTED = get("monitorConnected");
+		public static final Event MONITOR_DISCONNECTED = get("monitorDisconnected");
+		public static final Event GLFW_ERROR = get("glfwError");
+		public static final Event WINDOW_MOVED = get("windowMoved");
+		public static final Event WINDOW_RESIZED = get("windowResized");
+		public static final Event WINDOW_CLOSING = get("windowClosing");
+		public static final Event WINDOW_REFRESH = get("windowRefresh");
+		public static final Event WINDOW_GOT_FOCUS = get("windowGotFocus");
+		public static final Event WINDOW_LOST_FOCUS = get("windowLostFocus");
+		public static final Event WINDOW_ICONIFIED = get("windowIconified");
+		public static final Event WINDOW_DEICONIFIED = get("windowDeiconified");
+		public static final Event WINDOW_FRAME_BUFFER_RESIZED = get("windowFrameBufferResized");
+		public static final Event KEY_PRESSED = get("keyPressed");
+		public static final Event KEY_RELEASED = get("keyReleased");
+		public static final Event KEY_REPEATED = get("keyRepeated");
+		public static final Event KEY_TYPED = get("keyTyped");
+		public static final Event MOUSE_PRESSED = get("mousePressed");
+		public static final Event MOUSE_RELEASED = get("mouseReleased");
+		public static final Event KEY_TYPED_MODS = get("keyTypedMods");
+		public static final Event MOUSE_PRESSED_MODS = get("mousePressedMods");
+		public static final Event MOUSE_RELEASED_MODS = get("mouseReleasedMods");
+		public static final Event MOUSE_MOVED = get("mouseMoved");
+		public static final Event MOUSE_ENTERED = get("mouseEntered");
+		public static final Event MOUSE_EXITED = get("mouseExited");
+		public static final Event MOUSE_SCROLLED = get("mouseScrolled");
+		public static final Event FILES_DROPPED = get("filesDropped");
+		
+		private final String name;
+		private final String message;
+		private final int id;
+		private volatile Listener[] listeners = NONE;
+		private volatile boolean coalescing;
+		
+		static {
+			MOUSE_MOVED.coalescing = true;
+			WINDOW_MOVED.coalescing = true;
+			WINDOW_RESIZED.coalescing = true;
+			WINDOW_FRAME_BUFFER_RESIZED.coalescing = true;
+			WINDOW_REFRESH.coalescing = true;
+		}
+		
+		private Event(String name, int id) {
+			this.name = name;
+			this.id = id;
+			message = "Issuing event " + name;
+		}
+		
+		/**
+		 * Gets the event with the specified name, creating it if
+		 * it doesn't exist yet.
+		 * 
+		 * @param name the event name
+		 * @return the event
+		 */
+		public static Event get(String name) {
+			Event e = events.get(name);
+			if (e == null) {
+				synchronized (events) {
+					e = events.get(name);
+					if (e == null) {
+						e = new Event(name, nextID++);
+						events.put(name, e);
+					}
+				}
+			}
+			
+			return (e);
+		}
+		
+		/**
+		 * Gets the event with the specified name, if it exists.
+		 * 
+		 * @param name the event name
+		 * @return the event, or null
+		 */
+		public static Event find(String name) {
+			return (events.get(name));
+		}
+		
+		/**
+		 * Gets the event's name.
+		 * 
+		 * @return the name
+		 */
+		public String getName() {
+			return (name);
+		}
+		
+		/**
+		 * Gets the event's unique ID.  IDs are handed out in the order
+		 * events are first used.
+		 * 
+		 * @return the ID
+		 */
+		public int getID() {
+			return (id);
+		}
+		
+		/**
+		 * Sets whether queued deliveries of this event replace each other.
+		 * A listener that hasn't received the previous event yet only
+		 * receives the latest one.
+		 * 
+		 * @param b whether the event coalesces
+		 */
+		public void setCoalescing(boolean b) {
+			coalescing = b;
+		}
+		
+		/**
+		 * Gets whether queued deliveries of this event replace each other.
+		 * 
+		 * @return whether the event coalesces
+		 */
+		public boolean isCoalescing() {
+			return (coalescing);
+		}
+		
+		/**
+		 * Checks if anybody is listening for this event.
+		 * 
+		 * @return if there are listeners
+		 */
+		public boolean hasListeners() {
+			return (listeners.length != 0);
+		}
+		
+		@Override
+		public String toString() {
+			return (name);
+		}
+	}
+	
+	// Runs on a worker to deliver its pool events, one worker at a time, in order
+	private static class Listener implements Runnable {
 		private Method func;
 		private Object parent;
+		private Delivery mode;
+		private ConcurrentHashMap<Object, QueuedEvent> pending;
+		private EventQueue poolEvents;
+		private AtomicBoolean draining;
 		
-		public MethodRef(Object l, Method m) {
+		public Listener(Object l, Method m, Delivery d) {
 			func = m;
 			parent = l;
+			mode = d;
+			
+			if (mode != Delivery.SYNC) {
+				pending = new ConcurrentHashMap<Object, QueuedEvent>();
+				poolEvents = createQueue();
+				draining = new AtomicBoolean();
+			}
+		}
+		
+		@Override
+		public void run() {
+			while (true) {
+				for (int i = 0; i < POOL_BATCH; i++) {
+					if (!poolEvents.deliverOne()) {
+						break;
+					}
+				}
+				
+				// Give the worker up between batches, so one busy listener can't hold it
+				if (poolEvents.size() != 0) {
+					getPool().execute(this);
+					return;
+				}
+				
+				// Stop, unless an event arrived after the queue emptied and nobody else took it
+				draining.set(false);
+				if (poolEvents.size() == 0 || !draining.compareAndSet(false, true)) {
+					return;
+				}
+			}
 		}
 		
 		@Override
@@ -128,4 +586,62 @@ public class EventFactory {
 			return ret;
 		}
 	}
+	
+	// An event waiting in a queue.  Coalescing swaps out its arguments.
+	private static class QueuedEvent extends AtomicReference<Object[]> implements Runnable {
+		private static final long serialVersionUID = 1L;
+		
+		private Event event;
+		private Listener ref;
+		private Object key;
+		
+		private QueuedEvent(Event e, Listener l, Object k, Object[] args) {
+			super(args);
+			event = e;
+			ref = l;
+			key = k;
+		}
+		
+		@Override
+		public void run() {
+			Object[] args = getAndSet(null);
+			ref.pending.remove(key, this);
+			
+			if (args != null) {
+				invoke(event, ref, args);
+			}
+		}
+	}
+	
+	// Reusable argument arrays, one set per nested dispatch on a thread
+	private static class ArgFrames {
+		private Object[][][] arrays = new Object[4][][];
+		private int depth;
+		
+		private Object[] acquire(int n) {
+			if (depth == arrays.length) {
+				arrays = Arrays.copyOf(arrays, depth * 2);
+			}
+			
+			Object[][] level = arrays[depth];
+			if (level == null) {
+				level = new Object[4][];
+				arrays[depth] = level;
+			}
+			
+			Object[] args = level[n];
+			if (args == null) {
+				args = new Object[n];
+				level[n] = args;
+			}
+			
+			depth++;
+			return (args);
+		}
+		
+		private void release(Object[] args) {
+			Arrays.fill(args, null);
+			depth--;
+		}
+	}
 }
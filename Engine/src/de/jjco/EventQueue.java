@@ -0,0 +1,77 @@
+package de.jjco;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded, non-blocking queue of events waiting to be delivered to
+ * listeners on another thread.  Offering to a full queue fails instead
+ * of waiting, so the thread issuing events never blocks.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see EventFactory
+ */
+class EventQueue {
+	private ConcurrentLinkedQueue<Runnable> queue;
+	private AtomicInteger size;
+	private int capacity;
+	
+	/**
+	 * Creates an event queue.
+	 * 
+	 * @param cap the most events that may wait at once
+	 */
+	EventQueue(int cap) {
+		queue = new ConcurrentLinkedQueue<Runnable>();
+		size = new AtomicInteger();
+		capacity = cap;
+	}
+	
+	/**
+	 * Adds an event to the queue, if there is room.
+	 * 
+	 * @param r the delivery
+	 * @return false if the queue is full
+	 */
+	boolean offer(Runnable r) {
+		if (size.incrementAndGet() > capacity) {
+			size.decrementAndGet();
+			return (false);
+		}
+		
+		queue.add(r);
+		return (true);
+	}
+	
+	/**
+	 * Delivers one waiting event.
+	 * 
+	 * @return false if the queue was empty
+	 */
+	boolean deliverOne() {
+		Runnable r = queue.poll();
+		if (r == null) {
+			return (false);
+		}
+		
+		size.decrementAndGet();
+		r.run();
+		return (true);
+	}
+	
+	/**
+	 * Delivers the events that were waiting when this was called.  Events
+	 * queued by the listeners themselves wait for the next call.
+	 */
+	void deliverAll() {
+		for (int n = size.get(); n > 0 && deliverOne(); n--);
+	}
+	
+	/**
+	 * @return the number of events waiting
+	 */
+	int size() {
+		return (size.get());
+	}
+}
@@ -1,5 +1,11 @@
 package de.jjco;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.lwjgl.system.glfw.GLFW;
 import org.lwjgl.system.glfw.WindowCallback;
 
@@ -42,15 +48,19 @@ public abstract class Executor {
 	}
 	
 	/**
-	 * A Command that the Executor will handle.
+	 * A Command that the Executor will handle.  A Command is also a
+	 * {@link Future}, which completes once the GLFW main thread
+	 * has handled it.
 	 * 
 	 * @author Jared Jonas (bluesun212)
 	 * @version Revision 1
 	 */
-	public static class Command {
+	public static class Command implements Future<Object> {
 		private Commands cmd;
 		private Object[] args;
-		private Object ret;
+		private volatile Object ret;
+		private volatile Throwable error;
+		private final CountDownLatch done = new CountDownLatch(1);
 		
 		/**
 		 * Creates a new Command with the specified arguments.
@@ -101,6 +111,90 @@ public abstract class Executor {
 		void setReturn(Object ret) {
 			this.ret = ret;
 		}
+		
+		void complete() {
+			done.countDown();
+		}
+		
+		void fail(Throwable t) {
+			error = t;
+			done.countDown();
+		}
+		
+		/**
+		 * Commands cannot be cancelled once they are queued.
+		 * 
+		 * @return false
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return (false);
+		}
+		
+		@Override
+		public boolean isCancelled() {
+			return (false);
+		}
+		
+		@Override
+		public boolean isDone() {
+			return (done.getCount() == 0);
+		}
+		
+		/**
+		 * Waits for the Executor to handle this command, then
+		 * gets the return value.
+		 * 
+		 * @return the return from the Executor
+		 */
+		@Override
+		public Object get() throws InterruptedException, ExecutionException {
+			done.await();
+			return (report());
+		}
+		
+		@Override
+		public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if (!done.await(timeout, unit)) {
+				throw new TimeoutException(cmd + " has not been handled yet");
+			}
+			
+			return (report());
+		}
+		
+		/**
+		 * Waits for the Executor to handle this command without being
+		 * interrupted, then gets the return value.  If the Executor
+		 * threw an exception, this returns null.
+		 * 
+		 * @return the return from the Executor
+		 */
+		public Object waitFor() {
+			boolean interrupted = false;
+			
+			while (true) {
+				try {
+					done.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			
+			return (ret);
+		}
+		
+		private Object report() throws ExecutionException {
+			if (error != null) {
+				throw new ExecutionException(error);
+			}
+			
+			return (ret);
+		}
 	}
 	
 	static class ExecutorImpl extends Executor {
@@ -111,7 +205,7 @@ public abstract class Executor {
 			switch (cmd.getCommand()) {
 			case CREATE_WINDOW: 
 				Window w = ((Window) args[0]);
-				w.start();
+				cmd.setReturn(w.start());
 				WindowCallback.set(w.getHandle(), ToXicity.getInstance());
 				break;
 			case DESTROY_WINDOW:
@@ -1,5 +1,7 @@
 package de.jjco;
 
+import java.util.concurrent.atomic.AtomicLongArray;
+
 import org.lwjgl.system.glfw.GLFW;
 
 import de.jjco.components.CompNode;
@@ -11,10 +13,42 @@ import de.jjco.components.CompNode;
  * @version Revision 1
  */
 public class Input {
-	Point cursorPos = new Point();
-	boolean mouseInside;
-	boolean[] keys = new boolean[GLFW.GLFW_KEY_LAST + 1];
-	boolean[] mouse = new boolean[GLFW.GLFW_MOUSE_BUTTON_LAST + 1];
+	/** Raw event types. */
+	public static final int
+	RAW_KEY_PRESSED    = 0,
+	RAW_KEY_RELEASED   = 1,
+	RAW_MOUSE_PRESSED  = 2,
+	RAW_MOUSE_RELEASED = 3,
+	RAW_MOUSE_MOVED    = 4,
+	RAW_MOUSE_SCROLLED = 5,
+	RAW_MOUSE_ENTERED  = 6,
+	RAW_MOUSE_EXITED   = 7;
+
+	private static final int KEY_WORDS = (GLFW.GLFW_KEY_LAST >> 6) + 1;
+
+	/*
+	 * Live state, written only by the GLFW main thread.  Every write is
+	 * bracketed by seq becoming odd then even again, so publish can take
+	 * a consistent copy without locking.  Edges go to the half chosen by
+	 * parity, which publish flips before collecting the other half.
+	 */
+	private final AtomicLongArray liveKeys = new AtomicLongArray(KEY_WORDS);
+	private final AtomicLongArray[] keyPresses = {new AtomicLongArray(KEY_WORDS), new AtomicLongArray(KEY_WORDS)};
+	private final AtomicLongArray[] keyReleases = {new AtomicLongArray(KEY_WORDS), new AtomicLongArray(KEY_WORDS)};
+	private final AtomicLongArray mousePresses = new AtomicLongArray(2);
+	private final AtomicLongArray mouseReleases = new AtomicLongArray(2);
+	private volatile long liveMouse;
+	private volatile double liveX, liveY;
+	private volatile double motionX, motionY;
+	private volatile double scrollX, scrollY;
+	private volatile boolean liveInside;
+	private volatile int seq;
+	private volatile int parity;
+
+	// Published once per frame by the Window
+	private volatile Frame frame = new Frame();
+	private int publishedSeq;
+	private volatile RawInputBuffer raw;
 
 	/** Keyboard keys. */
 	public static final int
@@ -160,6 +194,222 @@ public class Input {
 
 	}
 
+	/**
+	 * Publishes everything received since the last call as the frame seen
+	 * by the getters.  Cursor motion and scrolling are coalesced, so the
+	 * frame sees the latest position and the summed deltas, and every key
+	 * or button that went down or up since the last frame is flagged.
+	 * Called by the Window before every step.  Published frames
+	 * are never modified, so they can be read from any thread.
+	 */
+	void publish() {
+		Frame f = frame;
+		if (seq == publishedSeq && !f.changes) {
+			return;
+		}
+
+		// Writers that see the new parity put their edges in the next frame
+		int p = parity;
+		parity = p ^ 1;
+
+		Frame n = new Frame();
+		int s;
+		double mx, my, sx, sy;
+
+		do {
+			s = awaitWriter();
+			for (int i = 0; i < KEY_WORDS; i++) {
+				n.keys[i] = liveKeys.get(i);
+			}
+
+			n.mouse = liveMouse;
+			n.x = liveX;
+			n.y = liveY;
+			n.inside = liveInside;
+			mx = motionX;
+			my = motionY;
+			sx = scrollX;
+			sy = scrollY;
+		} while (s != seq);
+
+		long edges = 0;
+		AtomicLongArray kp = keyPresses[p];
+		AtomicLongArray kr = keyReleases[p];
+		for (int i = 0; i < KEY_WORDS; i++) {
+			edges |= n.pressed[i] = kp.get(i);
+			edges |= n.released[i] = kr.get(i);
+			kp.set(i, 0);
+			kr.set(i, 0);
+		}
+
+		edges |= n.mousePressed = mousePresses.get(p);
+		edges |= n.mouseReleased = mouseReleases.get(p);
+		mousePresses.set(p, 0);
+		mouseReleases.set(p, 0);
+
+		n.dx = mx - f.motionX;
+		n.dy = my - f.motionY;
+		n.scrollX = sx - f.scrollTotalX;
+		n.scrollY = sy - f.scrollTotalY;
+		n.motionX = mx;
+		n.motionY = my;
+		n.scrollTotalX = sx;
+		n.scrollTotalY = sy;
+		n.changes = edges != 0 || n.dx != 0 || n.dy != 0 || n.scrollX != 0 || n.scrollY != 0;
+
+		publishedSeq = s;
+		frame = n;
+	}
+
+	private int awaitWriter() {
+		int s;
+		while (((s = seq) & 1) != 0) {
+			Thread.yield();
+		}
+
+		return (s);
+	}
+
+	void setKey(int key, boolean down) {
+		if (key < 0 || key > GLFW.GLFW_KEY_LAST) {
+			return;
+		}
+
+		int i = key >> 6;
+		long bit = 1L << key;
+
+		seq++;
+		long w = liveKeys.get(i);
+		if (down != ((w & bit) != 0)) {
+			liveKeys.set(i, w ^ bit);
+			AtomicLongArray e = (down ? keyPresses : keyReleases)[parity];
+			e.set(i, e.get(i) | bit);
+		}
+		seq++;
+
+		record(down ? RAW_KEY_PRESSED : RAW_KEY_RELEASED, key, 0, 0);
+	}
+
+	void setMouseButton(int button, boolean down) {
+		if (button < 0 || button > GLFW.GLFW_MOUSE_BUTTON_LAST) {
+			return;
+		}
+
+		long bit = 1L << button;
+
+		seq++;
+		long w = liveMouse;
+		if (down != ((w & bit) != 0)) {
+			liveMouse = w ^ bit;
+			AtomicLongArray e = down ? mousePresses : mouseReleases;
+			int p = parity;
+			e.set(p, e.get(p) | bit);
+		}
+		seq++;
+
+		record(down ? RAW_MOUSE_PRESSED : RAW_MOUSE_RELEASED, button, 0, 0);
+	}
+
+	void moveCursor(double x, double y) {
+		seq++;
+		motionX += x - liveX;
+		motionY += y - liveY;
+		liveX = x;
+		liveY = y;
+		seq++;
+
+		record(RAW_MOUSE_MOVED, 0, x, y);
+	}
+
+	void scroll(double x, double y) {
+		seq++;
+		scrollX += x;
+		scrollY += y;
+		seq++;
+
+		record(RAW_MOUSE_SCROLLED, 0, x, y);
+	}
+
+	void setCursorInside(boolean inside) {
+		seq++;
+		liveInside = inside;
+		seq++;
+
+		record(inside ? RAW_MOUSE_ENTERED : RAW_MOUSE_EXITED, 0, 0, 0);
+	}
+
+	/**
+	 * Sets the initial cursor state and forgets any edges, so keys held
+	 * when the Window opens are down but were not pressed.  The cursor
+	 * jump is not counted as motion.  Called before the Window runs.
+	 */
+	void reset(double x, double y, boolean inside) {
+		seq++;
+		liveX = x;
+		liveY = y;
+		liveInside = inside;
+
+		for (int p = 0; p < 2; p++) {
+			for (int i = 0; i < KEY_WORDS; i++) {
+				keyPresses[p].set(i, 0);
+				keyReleases[p].set(i, 0);
+			}
+
+			mousePresses.set(p, 0);
+			mouseReleases.set(p, 0);
+		}
+		seq++;
+	}
+
+	private void record(int type, int code, double x, double y) {
+		RawInputBuffer r = raw;
+		if (r != null) {
+			r.add(type, code, x, y);
+		}
+	}
+
+	/**
+	 * Starts recording every input sample for this Window, in addition
+	 * to the per frame state.  Use this when coalesced motion is not
+	 * enough, like for drawing or gesture recognition.  Samples are
+	 * dropped if they are not polled quickly enough.
+	 * 
+	 * @param capacity the most samples that can wait to be polled
+	 */
+	public void enableRawEvents(int capacity) {
+		raw = new RawInputBuffer(capacity);
+	}
+
+	/**
+	 * Stops recording input samples and discards the waiting ones.
+	 */
+	public void disableRawEvents() {
+		raw = null;
+	}
+
+	/**
+	 * Removes the oldest recorded input sample.  This should only be
+	 * called from one thread at a time.
+	 * 
+	 * @param e the event to copy the sample into
+	 * @return false if raw events are disabled or none are waiting
+	 */
+	public boolean pollRawEvent(RawEvent e) {
+		RawInputBuffer r = raw;
+		return (r != null && r.poll(e));
+	}
+
+	/**
+	 * Gets how many input samples were dropped because they were not
+	 * polled quickly enough.
+	 * 
+	 * @return the number of dropped samples
+	 */
+	public long getDroppedRawEvents() {
+		RawInputBuffer r = raw;
+		return (r == null ? 0 : r.getDropped());
+	}
+
 	/**
 	 * Checks to see whether the specified mouse button is being pressed.
 	 * 
@@ -167,11 +417,29 @@ public class Input {
 	 * @return if the button is down
 	 */
 	public boolean isMouseButtonDown(int button) {
-		if (button < 0 || button >= mouse.length) {
-			return (false);
-		}
+		return (test(frame.mouse, button, GLFW.GLFW_MOUSE_BUTTON_LAST));
+	}
 
-		return (mouse[button]);
+	/**
+	 * Checks to see whether the specified mouse button went down since
+	 * the last frame, even if it was released again.
+	 * 
+	 * @param button the button
+	 * @return if the button was pressed
+	 */
+	public boolean wasMouseButtonPressed(int button) {
+		return (test(frame.mousePressed, button, GLFW.GLFW_MOUSE_BUTTON_LAST));
+	}
+
+	/**
+	 * Checks to see whether the specified mouse button went up since
+	 * the last frame.
+	 * 
+	 * @param button the button
+	 * @return if the button was released
+	 */
+	public boolean wasMouseButtonReleased(int button) {
+		return (test(frame.mouseReleased, button, GLFW.GLFW_MOUSE_BUTTON_LAST));
 	}
 
 	/**
@@ -181,11 +449,44 @@ public class Input {
 	 * @return if the key is down
 	 */
 	public boolean isKeyDown(int key) {
-		if (key < 0 || key >= keys.length) {
+		return (test(frame.keys, key));
+	}
+
+	/**
+	 * Checks to see whether the specified key went down since the last
+	 * frame, even if it was released again.  Key repeats do not count.
+	 * 
+	 * @param key the key
+	 * @return if the key was pressed
+	 */
+	public boolean wasPressed(int key) {
+		return (test(frame.pressed, key));
+	}
+
+	/**
+	 * Checks to see whether the specified key went up since the last frame.
+	 * 
+	 * @param key the key
+	 * @return if the key was released
+	 */
+	public boolean wasReleased(int key) {
+		return (test(frame.released, key));
+	}
+
+	private static boolean test(long[] words, int key) {
+		if (key < 0 || key > GLFW.GLFW_KEY_LAST) {
+			return (false);
+		}
+
+		return ((words[key >> 6] & (1L << key)) != 0);
+	}
+
+	private static boolean test(long word, int bit, int last) {
+		if (bit < 0 || bit > last) {
 			return (false);
 		}
 
-		return (keys[key]);
+		return ((word & (1L << bit)) != 0);
 	}
 
 	/**
@@ -194,7 +495,21 @@ public class Input {
 	 * @return the cursor position
 	 */
 	public Point getCursorPosition() {
-		return cursorPos.copy();
+		return (getCursorPosition(new Point()));
+	}
+
+	/**
+	 * Copies the position where the cursor currently is into a Point,
+	 * without allocating.
+	 * 
+	 * @param dest the Point to set
+	 * @return dest
+	 */
+	public Point getCursorPosition(Point dest) {
+		Frame f = frame;
+		dest.setX(f.x);
+		dest.setY(f.y);
+		return (dest);
 	}
 
 	/**
@@ -203,7 +518,7 @@ public class Input {
 	 * @return the cursor X position
 	 */
 	public int getCursorX() {
-		return (int) cursorPos.getX();
+		return (int) frame.x;
 	}
 
 	/**
@@ -212,7 +527,27 @@ public class Input {
 	 * @return the cursor Y position
 	 */
 	public int getCursorY() {
-		return (int) cursorPos.getY();
+		return (int) frame.y;
+	}
+
+	/**
+	 * Gets the X position where the cursor currently is, with the
+	 * sub-pixel precision GLFW reports.
+	 * 
+	 * @return the exact cursor X position
+	 */
+	public double getExactCursorX() {
+		return (frame.x);
+	}
+
+	/**
+	 * Gets the Y position where the cursor currently is, with the
+	 * sub-pixel precision GLFW reports.
+	 * 
+	 * @return the exact cursor Y position
+	 */
+	public double getExactCursorY() {
+		return (frame.y);
 	}
 
 	/**
@@ -222,7 +557,7 @@ public class Input {
 	 * @return the cursor position
 	 */
 	public Point getCursorPosition(CompNode cn) {
-		Point p = cursorPos.copy();
+		Point p = getCursorPosition();
 		p.subtract(cn.getRenderingPos());
 		return p;
 	}
@@ -234,7 +569,7 @@ public class Input {
 	 * @return the cursor X position
 	 */
 	public int getCursorX(CompNode cn) {
-		return (int) (cursorPos.getX() - cn.getRenderingPos().getX());
+		return (int) (frame.x - cn.getRenderingX());
 	}
 
 	/**
@@ -244,7 +579,43 @@ public class Input {
 	 * @return the cursor Y position
 	 */
 	public int getCursorY(CompNode cn) {
-		return (int) (cursorPos.getX() - cn.getRenderingPos().getY());
+		return (int) (frame.y - cn.getRenderingY());
+	}
+
+	/**
+	 * Gets how far the cursor moved horizontally since the last frame.
+	 * 
+	 * @return the cursor X motion
+	 */
+	public double getCursorDeltaX() {
+		return (frame.dx);
+	}
+
+	/**
+	 * Gets how far the cursor moved vertically since the last frame.
+	 * 
+	 * @return the cursor Y motion
+	 */
+	public double getCursorDeltaY() {
+		return (frame.dy);
+	}
+
+	/**
+	 * Gets the horizontal scrolling since the last frame.
+	 * 
+	 * @return the summed X scroll offsets
+	 */
+	public double getScrollX() {
+		return (frame.scrollX);
+	}
+
+	/**
+	 * Gets the vertical scrolling since the last frame.
+	 * 
+	 * @return the summed Y scroll offsets
+	 */
+	public double getScrollY() {
+		return (frame.scrollY);
 	}
 
 	/**
@@ -253,6 +624,60 @@ public class Input {
 	 * @return whether the cursor is inside the Window
 	 */
 	public boolean isCursorInWindow() {
-		return mouseInside;
+		return frame.inside;
+	}
+
+	/**
+	 * A single input sample, filled by pollRawEvent.  The code is the key
+	 * or mouse button, and x and y are the cursor position or scroll
+	 * offsets depending on the type.
+	 * 
+	 * @author Jared Jonas (bluesun212)
+	 * @version Revision 1
+	 */
+	public static class RawEvent {
+		int type;
+		int code;
+		double x;
+		double y;
+		long time;
+
+		public int getType() {
+			return (type);
+		}
+
+		public int getCode() {
+			return (code);
+		}
+
+		public double getX() {
+			return (x);
+		}
+
+		public double getY() {
+			return (y);
+		}
+
+		/**
+		 * @return when the sample was received, from System.nanoTime
+		 */
+		public long getTime() {
+			return (time);
+		}
+	}
+
+	private static class Frame {
+		private final long[] keys = new long[KEY_WORDS];
+		private final long[] pressed = new long[KEY_WORDS];
+		private final long[] released = new long[KEY_WORDS];
+		private long mouse, mousePressed, mouseReleased;
+		private double x, y, dx, dy;
+		private double scrollX, scrollY;
+		private boolean inside;
+
+		// Running totals the next frame's deltas are taken from
+		private double motionX, motionY;
+		private double scrollTotalX, scrollTotalY;
+		private boolean changes;
 	}
 }
@@ -16,4 +16,38 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface ListenFor {
     String value();
+
+    /**
+     * Which thread the listener is called on.
+     */
+    Delivery delivery() default Delivery.SYNC;
+
+    /**
+     * The threads a listener can be called on.
+     * 
+     * @author Jared Jonas (bluesun212)
+     * @version Revision 1
+     */
+    public static enum Delivery {
+        /**
+         * Called immediately on the thread issuing the event.  Most engine
+         * events are issued on the GLFW main thread, so slow listeners
+         * will hold up input for every window.
+         */
+        SYNC,
+
+        /**
+         * Queued and called on the thread of the Window passed as the event's
+         * first argument, before that Window steps its nodes.  Events without
+         * a Window are delivered like POOL.
+         */
+        WINDOW,
+
+        /**
+         * Queued and called on one of the EventFactory's worker threads.
+         * A listener receives its events one at a time, in the order they
+         * were issued, but different listeners may be called at once.
+         */
+        POOL
+    }
 }
@@ -7,6 +7,8 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import org.lwjgl.system.glfw.GLFW;
 import org.lwjgl.system.glfw.MonitorCallback;
 
+import de.jjco.EventFactory.Event;
+
 /**
  * This utility class holds Monitor objects to be used for the windowing system.
  * 
@@ -114,13 +116,13 @@ public class MonitorUtils implements MonitorCallback {
 			m = new Monitor(monitor);
 			m.update();
 			monitors.add(m);
-			EventFactory.issueEvent("monitorConnected", m);
+			EventFactory.issueEvent(Event.MONITOR_CONNECTED, m);
 		} else if (event == GLFW.GLFW_DISCONNECTED) {
 			// Remove a monitor if it exists
 			Monitor m = get(monitor);
 			if (m != null) {
 				monitors.remove(m);
-				EventFactory.issueEvent("monitorDisconnected", m);
+				EventFactory.issueEvent(Event.MONITOR_DISCONNECTED, m);
 			}
 		}
 	}
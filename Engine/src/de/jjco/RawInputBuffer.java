@@ -0,0 +1,91 @@
+package de.jjco;
+
+/**
+ * A fixed size ring buffer holding every input sample GLFW reports for
+ * a Window.  The GLFW main thread is the only writer and a single game
+ * thread is expected to read, so neither side locks.  Samples are
+ * dropped while the buffer is full.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see Input.RawEvent
+ */
+class RawInputBuffer {
+	private final int[] type;
+	private final int[] code;
+	private final double[] x;
+	private final double[] y;
+	private final long[] time;
+	private final int mask;
+	
+	private volatile long head;
+	private volatile long tail;
+	private volatile long dropped;
+	
+	/**
+	 * Creates a ring buffer.
+	 * 
+	 * @param capacity the minimum number of samples to hold
+	 */
+	RawInputBuffer(int capacity) {
+		int cap = 16;
+		while (cap < capacity) {
+			cap <<= 1;
+		}
+		
+		type = new int[cap];
+		code = new int[cap];
+		x = new double[cap];
+		y = new double[cap];
+		time = new long[cap];
+		mask = cap - 1;
+	}
+	
+	/**
+	 * Adds a sample.  Only called from the GLFW main thread.
+	 */
+	void add(int t, int c, double xv, double yv) {
+		long h = head;
+		if (h - tail > mask) {
+			dropped++;
+			return;
+		}
+		
+		int i = (int) h & mask;
+		type[i] = t;
+		code[i] = c;
+		x[i] = xv;
+		y[i] = yv;
+		time[i] = System.nanoTime();
+		head = h + 1;
+	}
+	
+	/**
+	 * Removes the oldest sample and copies it into the event.
+	 * 
+	 * @param e the event to fill
+	 * @return false if there were no samples
+	 */
+	boolean poll(Input.RawEvent e) {
+		long t = tail;
+		if (t == head) {
+			return (false);
+		}
+		
+		int i = (int) t & mask;
+		e.type = type[i];
+		e.code = code[i];
+		e.x = x[i];
+		e.y = y[i];
+		e.time = time[i];
+		tail = t + 1;
+		return (true);
+	}
+	
+	/**
+	 * @return the number of samples dropped because the buffer was full
+	 */
+	long getDropped() {
+		return (dropped);
+	}
+}
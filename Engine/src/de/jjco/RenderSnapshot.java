@@ -0,0 +1,206 @@
+package de.jjco;
+
+import java.util.Arrays;
+
+import de.jjco.components.BatchedRenderState;
+import de.jjco.components.CompNode;
+import de.jjco.components.DrawableNode;
+import de.jjco.components.RenderState;
+import de.jjco.graphics.SpriteBatch;
+
+/**
+ * A flattened copy of a Window's node tree, in drawing order, that the
+ * render thread draws while the simulation thread steps the next frame.
+ * Each entry holds a node's position and angle relative to its parent,
+ * and the RenderState it captured.  Nodes that can not capture their
+ * state are kept and drawn directly, while holding their lock.
+ * <p>
+ * Snapshots are reused: the simulation thread refills one while the
+ * render thread draws another, so entries must not be kept between
+ * frames.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see Window#setPipelined(boolean)
+ */
+public final class RenderSnapshot {
+	private double[] x = new double[64];
+	private double[] y = new double[64];
+	private double[] angle = new double[64];
+	private int[] pops = new int[64];
+	private boolean[] captured = new boolean[64];
+	private RenderState[] states = new RenderState[64];
+	private DrawableNode[] live = new DrawableNode[64];
+	private int size;
+	private double alpha = 1;
+	
+	// Set by the simulation thread when filled, cleared when taken for drawing
+	volatile boolean fresh;
+	
+	RenderSnapshot() {
+		
+	}
+	
+	/**
+	 * Refills this snapshot from a node tree.  Called on the
+	 * simulation thread after stepping.
+	 * 
+	 * @param root the root node
+	 * @param a the interpolation amount
+	 */
+	void capture(CompNode root, double a) {
+		for (int i = 0; i < size; i++) {
+			live[i] = null;
+		}
+		
+		size = 0;
+		alpha = a;
+		add(root);
+	}
+	
+	private void add(CompNode cn) {
+		if (size == x.length) {
+			grow();
+		}
+		
+		int i = size++;
+		synchronized (cn.getUnsafeLock()) {
+			x[i] = cn.getX();
+			y[i] = cn.getY();
+			angle[i] = cn.getAngle();
+			pops[i] = 0;
+			captured[i] = false;
+			
+			if (cn instanceof DrawableNode && cn.getParent() != null && cn.getWindow() != null) {
+				// The slot's old state is offered back so it can be refilled
+				RenderState s = ((DrawableNode) cn).captureRenderState(states[i]);
+				if (s != null) {
+					states[i] = s;
+					captured[i] = true;
+				} else {
+					live[i] = (DrawableNode) cn;
+				}
+			}
+		}
+		
+		for (CompNode child : cn.getChildren()) {
+			add(child);
+		}
+		
+		// The last entry of a subtree closes it
+		pops[size - 1]++;
+	}
+	
+	private void grow() {
+		int n = x.length * 2;
+		x = Arrays.copyOf(x, n);
+		y = Arrays.copyOf(y, n);
+		angle = Arrays.copyOf(angle, n);
+		pops = Arrays.copyOf(pops, n);
+		captured = Arrays.copyOf(captured, n);
+		states = Arrays.copyOf(states, n);
+		live = Arrays.copyOf(live, n);
+	}
+	
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return (size);
+	}
+	
+	/**
+	 * @return the interpolation amount when this was captured
+	 */
+	public double getAlpha() {
+		return (alpha);
+	}
+	
+	/**
+	 * Gets the X position of an entry, relative to its parent.
+	 * 
+	 * @param i the entry
+	 * @return the x position
+	 */
+	public double getX(int i) {
+		return (x[i]);
+	}
+	
+	/**
+	 * Gets the Y position of an entry, relative to its parent.
+	 * 
+	 * @param i the entry
+	 * @return the y position
+	 */
+	public double getY(int i) {
+		return (y[i]);
+	}
+	
+	/**
+	 * Gets the angle of an entry, relative to its parent.
+	 * 
+	 * @param i the entry
+	 * @return the angle in degrees
+	 */
+	public double getAngle(int i) {
+		return (angle[i]);
+	}
+	
+	/**
+	 * Gets how many subtrees end at an entry.  Entries start a new
+	 * transform, nested in the one before, and after drawing an entry
+	 * this many transforms should be undone.
+	 * 
+	 * @param i the entry
+	 * @return the number of transforms to undo
+	 */
+	public int getEnd(int i) {
+		return (pops[i]);
+	}
+	
+	/**
+	 * Draws an entry, with its transform already applied.
+	 * 
+	 * @param i the entry
+	 */
+	public void draw(int i) {
+		if (captured[i]) {
+			states[i].draw(alpha);
+		} else if (live[i] != null) {
+			DrawableNode dn = live[i];
+			synchronized (dn.getUnsafeLock()) {
+				if (dn.getParent() != null && dn.getWindow() != null) {
+					dn.draw(alpha);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds an entry to a batch, with its transform already applied to
+	 * the batch.  Entries that can not be batched are left alone, and
+	 * have to be drawn with draw instead.
+	 * 
+	 * @param i the entry
+	 * @param batch the batch
+	 * @return false if the entry has to be drawn with draw
+	 */
+	public boolean draw(int i, SpriteBatch batch) {
+		if (captured[i]) {
+			if (!(states[i] instanceof BatchedRenderState)) {
+				return (false);
+			}
+			
+			((BatchedRenderState) states[i]).draw(batch, alpha);
+		} else if (live[i] != null) {
+			DrawableNode dn = live[i];
+			synchronized (dn.getUnsafeLock()) {
+				if (dn.getParent() != null && dn.getWindow() != null) {
+					return (dn.draw(batch, alpha));
+				}
+			}
+		}
+		
+		return (true);
+	}
+}
@@ -0,0 +1,144 @@
+package de.jjco;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.jjco.components.CompNode;
+
+/**
+ * Steps the children of a node on several threads at once.  The children
+ * are split into chunks which the calling thread and the pool's workers
+ * claim one at a time until none are left, so a thread that finishes early
+ * takes work from the rest.  The calling thread does not return until
+ * every chunk has stepped.
+ * <p>
+ * Since the calling thread claims chunks too, nested parallel nodes never
+ * wait on a pool that is busy with their parents.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see CompNode#setParallelChildren(boolean)
+ */
+class StepPool {
+	private static final int WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	private static final int CHUNKS_PER_THREAD = 4;
+	
+	private static final Object lock = new Object();
+	private static volatile ExecutorService pool;
+	
+	/**
+	 * Steps each child, and their children, using the pool.
+	 * 
+	 * @param w the Window doing the stepping
+	 * @param children the children to step
+	 */
+	static void stepChildren(Window w, List<CompNode> children) {
+		Object[] nodes = children.toArray();
+		if (nodes.length < 2) {
+			for (Object o : nodes) {
+				w.stepNode((CompNode) o);
+			}
+			
+			return;
+		}
+		
+		Group g = new Group(w, nodes);
+		int helpers = Math.min(WORKERS, g.chunks - 1);
+		ExecutorService p = getPool();
+		for (int i = 0; i < helpers; i++) {
+			p.execute(g);
+		}
+		
+		g.run();
+		g.await();
+	}
+	
+	private static ExecutorService getPool() {
+		if (pool == null) {
+			synchronized (lock) {
+				if (pool == null) {
+					pool = Executors.newFixedThreadPool(WORKERS, new ThreadFactory() {
+						private AtomicInteger count = new AtomicInteger();
+						
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r);
+							t.setName("ToXicity Step Worker " + count.incrementAndGet());
+							t.setDaemon(true);
+							return (t);
+						}
+					});
+				}
+			}
+		}
+		
+		return (pool);
+	}
+	
+	private static class Group implements Runnable {
+		private final Window window;
+		private final Object[] nodes;
+		private final int chunkSize;
+		private final int chunks;
+		private final AtomicInteger next = new AtomicInteger();
+		private final CountDownLatch done;
+		private volatile Throwable error;
+		
+		private Group(Window w, Object[] n) {
+			window = w;
+			nodes = n;
+			chunkSize = Math.max(1, n.length / ((WORKERS + 1) * CHUNKS_PER_THREAD));
+			chunks = (n.length + chunkSize - 1) / chunkSize;
+			done = new CountDownLatch(chunks);
+		}
+		
+		@Override
+		public void run() {
+			int c;
+			while ((c = next.getAndIncrement()) < chunks) {
+				try {
+					int end = Math.min(nodes.length, (c + 1) * chunkSize);
+					for (int i = c * chunkSize; i < end; i++) {
+						window.stepNode((CompNode) nodes[i]);
+					}
+				} catch (Throwable t) {
+					if (error == null) {
+						error = t;
+					}
+				} finally {
+					done.countDown();
+				}
+			}
+		}
+		
+		private void await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					done.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			
+			// Fail the same way stepping on one thread would
+			Throwable t = error;
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			} else if (t != null) {
+				throw new RuntimeException(t);
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package de.jjco;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.opengl.GL11;
@@ -9,6 +10,7 @@ import org.lwjgl.system.glfw.ErrorCallback;
 import org.lwjgl.system.glfw.GLFW;
 import org.lwjgl.system.glfw.WindowCallback;
 
+import de.jjco.EventFactory.Event;
 import de.jjco.Executor.Command;
 import de.jjco.Executor.Commands;
 import de.jjco.audio.SoundSystem;
@@ -22,9 +24,34 @@ import de.jjco.audio.SoundSystem;
  */
 public class ToXicity extends WindowCallback implements ErrorCallback, Runnable {
 	private static ToXicity instance;
+	private static volatile LoopMode mode = LoopMode.WAIT;
+	
+	// Boxed event arguments, made up front so input events need not allocate
+	private static final Integer[] INTS = new Integer[0x800];
+	private static final int SCROLL_RANGE = 16;
+	private static final Double[] SCROLLS = new Double[SCROLL_RANGE * 2 + 1];
+	
+	static {
+		for (int i = 0; i < INTS.length; i++) {
+			INTS[i] = Integer.valueOf(i);
+		}
+		
+		for (int i = 0; i < SCROLLS.length; i++) {
+			SCROLLS[i] = Double.valueOf(i - SCROLL_RANGE);
+		}
+	}
+	
 	private ConcurrentLinkedQueue<Command> cmdQ;
+	private AtomicInteger queued;
 	private Executor exec;
-	private boolean running;
+	private Thread mainThread;
+	private volatile boolean running;
+	private volatile boolean initialized;
+	
+	// Loop metrics
+	private volatile long iterations;
+	private volatile long lastIteration;
+	private volatile long maxIteration;
 	
 	/**
 	 * Creates the main GLFW thread, if it hasn't done so already.
@@ -49,6 +76,92 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 		if (instance != null && instance.running) {
 			EngineLog.logGeneral("Destroying");
 			instance.running = false;
+			instance.wake();
+		}
+	}
+	
+	/**
+	 * Sets how the GLFW main thread waits for events.  The default
+	 * is {@link LoopMode#WAIT}.  This may be changed at any time.
+	 * 
+	 * @param lm the loop mode
+	 */
+	public static void setLoopMode(LoopMode lm) {
+		if (lm == null) {
+			throw new IllegalArgumentException("Loop mode cannot be null");
+		}
+		
+		// Wake with the old mode, which the main thread may still be waiting in
+		LoopMode old = mode;
+		mode = lm;
+		if (instance != null) {
+			instance.wake(old);
+		}
+	}
+	
+	/**
+	 * Gets how the GLFW main thread waits for events.
+	 * 
+	 * @return the loop mode
+	 */
+	public static LoopMode getLoopMode() {
+		return (mode);
+	}
+	
+	/**
+	 * Gets the number of times the GLFW main thread has gone
+	 * through its loop.
+	 * 
+	 * @return the loop iterations, or 0 if ToXicity isn't running
+	 */
+	public static long getLoopIterations() {
+		ToXicity t = instance;
+		return (t == null ? 0 : t.iterations);
+	}
+	
+	/**
+	 * Gets the number of commands waiting to be handled by the
+	 * GLFW main thread.
+	 * 
+	 * @return the command queue depth
+	 */
+	public static int getCommandQueueDepth() {
+		ToXicity t = instance;
+		return (t == null ? 0 : t.queued.get());
+	}
+	
+	/**
+	 * Gets how long the GLFW main thread spent handling commands and 
+	 * events in its last iteration, not counting time spent waiting.
+	 * 
+	 * @return the iteration time in nanoseconds
+	 */
+	public static long getLastIterationTime() {
+		ToXicity t = instance;
+		return (t == null ? 0 : t.lastIteration);
+	}
+	
+	/**
+	 * Gets the longest time the GLFW main thread has spent handling
+	 * commands and events in one iteration.
+	 * 
+	 * @return the iteration time in nanoseconds
+	 * @see #resetLoopMetrics()
+	 */
+	public static long getMaxIterationTime() {
+		ToXicity t = instance;
+		return (t == null ? 0 : t.maxIteration);
+	}
+	
+	/**
+	 * Resets the loop iteration count and times.
+	 */
+	public static void resetLoopMetrics() {
+		ToXicity t = instance;
+		if (t != null) {
+			t.iterations = 0;
+			t.lastIteration = 0;
+			t.maxIteration = 0;
 		}
 	}
 	
@@ -63,31 +176,76 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 	private ToXicity(Executor handler) {
 		exec = handler;
 		cmdQ = new ConcurrentLinkedQueue<Command>();
+		queued = new AtomicInteger();
 		
-		Thread t = new Thread(this);
-		t.setName("ToXicity Main Thread");
-		t.start();
+		mainThread = new Thread(this);
+		mainThread.setName("ToXicity Main Thread");
+		mainThread.start();
 	}
 	
+	/**
+	 * Queues a command for the GLFW main thread without waiting for it.
+	 * The returned Command is a Future that completes once the command
+	 * has been handled, so several commands can be pipelined and
+	 * waited on later.
+	 * 
+	 * @param cmdType the command
+	 * @param args the arguments
+	 * @return the queued Command
+	 */
 	public Command add(Commands cmdType, Object... args) {
 		// Add command to queue
 		Command cmd = new Command(cmdType, args);
 		cmdQ.add(cmd);
+		queued.incrementAndGet();
+		wake();
 		return (cmd);
 	}
 	
+	/**
+	 * Queues a command for the GLFW main thread and blocks until it
+	 * has been handled.  If this is called from the main thread, the
+	 * command is handled immediately.
+	 * 
+	 * @param cmdType the command
+	 * @param args the arguments
+	 * @return the return from the Executor
+	 */
 	public Object addAndWait(Commands cmdType, Object... args) {
-		Command cmd = add(cmdType, args);
-		
-		// Spin while the command is processing
-		while (cmdQ.contains(cmd)) {
-			try {
-				Thread.sleep(1l);
-			} catch (InterruptedException e) {}
+		if (Thread.currentThread() == mainThread) {
+			Command cmd = new Command(cmdType, args);
+			handle(cmd);
+			return (cmd.getReturn());
 		}
 		
-		// Pass back return
-		return (cmd.getReturn());
+		return (add(cmdType, args).waitFor());
+	}
+	
+	// Breaks the main thread out of glfwWaitEvents
+	private void wake() {
+		wake(mode);
+	}
+	
+	private void wake(LoopMode m) {
+		if (initialized && m == LoopMode.WAIT) {
+			GLFW.glfwPostEmptyEvent();
+		}
+	}
+	
+	private void handle(Command cmd) {
+		try {
+			exec.handleCommand(cmd);
+			cmd.complete();
+		} catch (RuntimeException e) {
+			EngineLog.logException("Could not handle command " + cmd.getCommand());
+			EngineLog.logException(e);
+			cmd.fail(e);
+		} catch (Error e) {
+			// Fail the command so its callers do not wait forever, then let the error go on
+			EngineLog.logException("Could not handle command " + cmd.getCommand() + ": " + e);
+			cmd.fail(e);
+			throw e;
+		}
 	}
 
 	@Override
@@ -97,6 +255,7 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 			throw new Error("Cannot initialize GLFW");
 		}
 		
+		initialized = true;
 		ShutdownHook hook = new ShutdownHook();
 		Runtime.getRuntime().addShutdownHook(hook);
 		SoundSystem.init();
@@ -123,11 +282,13 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 		EngineLog.logGeneral("Running");
 		running = true;
 		while (running) {
+			long start = System.nanoTime();
+			
 			// Handle commands
-			while (!cmdQ.isEmpty()) {
-				Command cmd = cmdQ.peek();
-				exec.handleCommand(cmd);
-				cmdQ.remove(cmd);
+			Command cmd;
+			while ((cmd = cmdQ.poll()) != null) {
+				queued.decrementAndGet();
+				handle(cmd);
 				
 				if (Window.canShutdown()) {
 					running = false;
@@ -135,15 +296,38 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 			}
 			
 			// Poll events
-			GLFW.glfwPostEmptyEvent();
 			GLFW.glfwPollEvents();
 			
-			// Spin
-			try {
-				Thread.sleep(1);
-			} catch (InterruptedException e) {}
+			long time = System.nanoTime() - start;
+			lastIteration = time;
+			if (time > maxIteration) {
+				maxIteration = time;
+			}
+			
+			iterations++;
+			
+			// Wait for the next event or command
+			if (!running) {
+				break;
+			} else if (mode == LoopMode.WAIT) {
+				if (cmdQ.isEmpty()) {
+					GLFW.glfwWaitEvents();
+				}
+			} else {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {}
+			}
+		}
+		
+		// Release anybody still waiting on a command
+		Command cmd;
+		while ((cmd = cmdQ.poll()) != null) {
+			queued.decrementAndGet();
+			cmd.fail(new IllegalStateException("ToXicity has shut down"));
 		}
 		
+		initialized = false;
 		GLFW.glfwTerminate();
 		SoundSystem.destroy();
 		Runtime.getRuntime().removeShutdownHook(hook);
@@ -156,7 +340,7 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 	public void invoke(int err, long desc) {
 		String msg = MemoryUtil.memDecodeUTF8(desc);
 		EngineLog.logException("GLFW ERROR " + err + ": " + msg);
-		EventFactory.issueEvent("glfwError", err, msg);
+		EventFactory.issueEvent(Event.GLFW_ERROR, err, msg);
 	}
 
 	@Override
@@ -165,7 +349,7 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 		if (w != null) {
 			w.pos.setX(xpos);
 			w.pos.setY(ypos);
-			EventFactory.issueEvent("windowMoved", w);
+			EventFactory.issueEvent(Event.WINDOW_MOVED, w);
 		}
 	}
 
@@ -175,7 +359,7 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 		if (w != null) {
 			w.width = width;
 			w.height = height;
-			EventFactory.issueEvent("windowResized", w);
+			EventFactory.issueEvent(Event.WINDOW_RESIZED, w);
 		}
 	}
 
@@ -184,7 +368,7 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 		Window w = Window.getWindow(window);
 		if (w != null) {
 			CloseAction cl = new CloseAction();
-			EventFactory.issueEvent("windowClosing", w, cl);
+			EventFactory.issueEvent(Event.WINDOW_CLOSING, w, cl);
 			
 			if (cl.getShouldClose()) {
 				w.setWindowClosingState(true);
@@ -196,7 +380,7 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 	public void windowRefresh(long window) {
 		Window w = Window.getWindow(window);
 		if (w != null) {
-			EventFactory.issueEvent("windowRefresh", w);
+			EventFactory.issueEvent(Event.WINDOW_REFRESH, w);
 		}
 	}
 
@@ -205,10 +389,10 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 		Window w = Window.getWindow(window);
 		if (w != null) {
 			if (focused == GL11.GL_TRUE) {
-				EventFactory.issueEvent("windowGotFocus", w);
+				EventFactory.issueEvent(Event.WINDOW_GOT_FOCUS, w);
 				w.focused = true;
 			} else {
-				EventFactory.issueEvent("windowLostFocus", w);
+				EventFactory.issueEvent(Event.WINDOW_LOST_FOCUS, w);
 				w.focused = false;
 			}
 		}
@@ -219,10 +403,10 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 		Window w = Window.getWindow(window);
 		if (w != null) {
 			if (iconified == GL11.GL_TRUE) {
-				EventFactory.issueEvent("windowIconified", w);
+				EventFactory.issueEvent(Event.WINDOW_ICONIFIED, w);
 				w.iconified = true;
 			} else {
-				EventFactory.issueEvent("windowDeiconified", w);
+				EventFactory.issueEvent(Event.WINDOW_DEICONIFIED, w);
 				w.iconified = false;
 			}
 		}
@@ -234,23 +418,38 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 		if (w != null) {
 			w.fbWidth = width;
 			w.fbHeight = height;
-			EventFactory.issueEvent("windowFrameBufferResized", w);
+			EventFactory.issueEvent(Event.WINDOW_FRAME_BUFFER_RESIZED, w);
 		}
 	}
 
+	// Boxes key codes, code points and buttons without allocating, for most of them
+	private static Integer box(int i) {
+		return ((i >= 0 && i < INTS.length) ? INTS[i] : Integer.valueOf(i));
+	}
+
+	// Boxes scroll offsets, which are whole numbers for most mice
+	private static Double box(double d) {
+		int i = (int) d;
+		if (i == d && i >= -SCROLL_RANGE && i <= SCROLL_RANGE) {
+			return (SCROLLS[i + SCROLL_RANGE]);
+		}
+
+		return (Double.valueOf(d));
+	}
+
 	@Override
 	public void key(long window, int key, int scancode, int action, int mods) {
 		Window w = Window.getWindow(window);
 		if (w != null) {
-			KeyModifiers km = new KeyModifiers(mods);
+			KeyModifiers km = KeyModifiers.get(mods);
 			if (action == GLFW.GLFW_PRESS) {
-				w.getInput().keys[key] = true;
-				EventFactory.issueEvent("keyPressed", w, key, km);
+				w.getInput().setKey(key, true);
+				EventFactory.issueEvent(Event.KEY_PRESSED, w, box(key), km);
 			} else if (action == GLFW.GLFW_RELEASE) {
-				w.getInput().keys[key] = false;
-				EventFactory.issueEvent("keyReleased", w, key, km);
+				w.getInput().setKey(key, false);
+				EventFactory.issueEvent(Event.KEY_RELEASED, w, box(key), km);
 			} if (action == GLFW.GLFW_REPEAT) {
-				EventFactory.issueEvent("keyRepeated", w, key, km);
+				EventFactory.issueEvent(Event.KEY_REPEATED, w, box(key), km);
 			}			
 		}
 	}
@@ -259,7 +458,7 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 	public void character(long window, int codepoint) {
 		Window w = Window.getWindow(window);
 		if (w != null) {
-			EventFactory.issueEvent("keyTyped", w, codepoint);
+			EventFactory.issueEvent(Event.KEY_TYPED, w, box(codepoint));
 		}
 	}
 
@@ -267,8 +466,8 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 	public void charMods(long window, int codepoint, int mods) {
 		Window w = Window.getWindow(window);
 		if (w != null) {
-			KeyModifiers km = new KeyModifiers(mods);
-			EventFactory.issueEvent("keyTypedMods", w, codepoint, km);
+			KeyModifiers km = KeyModifiers.get(mods);
+			EventFactory.issueEvent(Event.KEY_TYPED_MODS, w, box(codepoint), km);
 		}
 	}
 
@@ -276,15 +475,15 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 	public void mouseButton(long window, int button, int action, int mods) {
 		Window w = Window.getWindow(window);
 		if (w != null) {
-			KeyModifiers km = new KeyModifiers(mods);
+			KeyModifiers km = KeyModifiers.get(mods);
 			if (action == GLFW.GLFW_PRESS) {
-				w.getInput().mouse[button] = true;
-				EventFactory.issueEvent("mousePressed", w, button);
-				EventFactory.issueEvent("mousePressedMods", w, button, km);
+				w.getInput().setMouseButton(button, true);
+				EventFactory.issueEvent(Event.MOUSE_PRESSED, w, box(button));
+				EventFactory.issueEvent(Event.MOUSE_PRESSED_MODS, w, box(button), km);
 			} else if (action == GLFW.GLFW_RELEASE) {
-				w.getInput().mouse[button] = false;
-				EventFactory.issueEvent("mouseReleased", w, button);
-				EventFactory.issueEvent("mouseReleasedMods", w, button, km);
+				w.getInput().setMouseButton(button, false);
+				EventFactory.issueEvent(Event.MOUSE_RELEASED, w, box(button));
+				EventFactory.issueEvent(Event.MOUSE_RELEASED_MODS, w, box(button), km);
 			} 
 		}
 	}
@@ -293,9 +492,8 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 	public void cursorPos(long window, double xpos, double ypos) {
 		Window w = Window.getWindow(window);
 		if (w != null) {
-			w.getInput().cursorPos.setX(xpos);
-			w.getInput().cursorPos.setY(ypos);
-			EventFactory.issueEvent("mouseMoved", w);
+			w.getInput().moveCursor(xpos, ypos);
+			EventFactory.issueEvent(Event.MOUSE_MOVED, w);
 		}
 	}
 
@@ -304,11 +502,11 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 		Window w = Window.getWindow(window);
 		if (w != null) {
 			if (entered == GL11.GL_TRUE) {
-				w.getInput().mouseInside = true;
-				EventFactory.issueEvent("mouseEntered", w);
+				w.getInput().setCursorInside(true);
+				EventFactory.issueEvent(Event.MOUSE_ENTERED, w);
 			} else {
-				w.getInput().mouseInside = false;
-				EventFactory.issueEvent("mouseExited", w);
+				w.getInput().setCursorInside(false);
+				EventFactory.issueEvent(Event.MOUSE_EXITED, w);
 			}
 		}
 	}
@@ -317,7 +515,8 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 	public void scroll(long window, double xoffset, double yoffset) {
 		Window w = Window.getWindow(window);
 		if (w != null) {
-			EventFactory.issueEvent("mouseScrolled", xoffset, yoffset);
+			w.getInput().scroll(xoffset, yoffset);
+			EventFactory.issueEvent(Event.MOUSE_SCROLLED, w, box(xoffset), box(yoffset));
 		}
 	}
 
@@ -333,10 +532,31 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 				offset += MemoryUtil.memPointerSize();
 			}
 			
-			EventFactory.issueEvent("filesDropped", w, files);
+			EventFactory.issueEvent(Event.FILES_DROPPED, w, files);
 		}
 	}
 	
+	/**
+	 * The ways the GLFW main thread can wait for input events and commands.
+	 * 
+	 * @author Jared Jonas (bluesun212)
+	 * @version Revision 1
+	 */
+	public static enum LoopMode {
+		/**
+		 * Sleeps in glfwWaitEvents until an event arrives or a command is
+		 * queued.  This uses no CPU while idle and handles input as soon
+		 * as it arrives.
+		 */
+		WAIT,
+		
+		/**
+		 * Polls for events, then sleeps for a millisecond.  This can be used
+		 * on platforms where glfwPostEmptyEvent is unreliable.
+		 */
+		POLL
+	}
+	
 	/**
 	 * Represents whether a Window should close when its close button is pressed.
 	 * 
@@ -376,12 +596,25 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 	 * @version Revision 1
 	 */
 	public static class KeyModifiers {
-		private int mods;
+		// One for each combination of shift, control, alt and super
+		private static final KeyModifiers[] ALL = new KeyModifiers[16];
+		
+		static {
+			for (int i = 0; i < ALL.length; i++) {
+				ALL[i] = new KeyModifiers(i);
+			}
+		}
+		
+		private final int mods;
 		
 		private KeyModifiers(int mods) {
 			this.mods = mods;
 		}
 		
+		private static KeyModifiers get(int mods) {
+			return ((mods >= 0 && mods < ALL.length) ? ALL[mods] : new KeyModifiers(mods));
+		}
+		
 		/**
 		 * Gets if the shift button is being pressed.
 		 * 
@@ -427,6 +660,7 @@ public class ToXicity extends WindowCallback implements ErrorCallback, Runnable
 				public void run() {
 					EngineLog.logWarning("Shutdown hook activated");
 					running = false;
+					wake();
 					
 					while (instance == null) {
 						try {
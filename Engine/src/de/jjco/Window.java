@@ -4,7 +4,9 @@ import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
 import java.util.LinkedList;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
@@ -16,6 +18,7 @@ import de.jjco.Executor.Commands;
 import de.jjco.components.CollisionNode;
 import de.jjco.components.CompNode;
 import de.jjco.components.SceneNode;
+import de.jjco.components.TransformStore;
 import de.jjco.components.Viewport;
 import de.jjco.resources.ResourceManager;
 
@@ -27,7 +30,8 @@ import de.jjco.resources.ResourceManager;
  * @version Revision 1
  */
 public class Window implements Runnable {
-	private static ConcurrentLinkedQueue<Window> active = new ConcurrentLinkedQueue<Window>();
+	private static WindowTable active = new WindowTable();
+	private static ThreadLocal<Window> bound = new ThreadLocal<Window>();
 	private static boolean firstOpened;
 	
 	private LinkedList<Viewport> viewports;
@@ -38,6 +42,23 @@ public class Window implements Runnable {
 	private Input input;
 	private boolean shouldClose;
 	
+	private volatile long stepLength = 1000000000L / 60;
+	private volatile int maxSteps = 5;
+	private volatile long frameLength;
+	private volatile double alpha = 1;
+	private long simTime;
+	private long lastAdvance;
+	private long acc;
+	
+	private volatile boolean pipelined;
+	private volatile boolean simulating;
+	private Thread simulation;
+	private AtomicReference<RenderSnapshot> ready = new AtomicReference<RenderSnapshot>(new RenderSnapshot());
+	private RenderSnapshot front = new RenderSnapshot();
+	private RenderSnapshot back = new RenderSnapshot();
+	private CopyOnWriteArrayList<TransformStore> stores = new CopyOnWriteArrayList<TransformStore>();
+	private EventQueue later = new EventQueue(Integer.MAX_VALUE);
+
 	private long hwnd;
 	private String title;
 	private WindowSetup ws;
@@ -56,6 +77,7 @@ public class Window implements Runnable {
 	private boolean floating;
 	
 	// Set in ToXicity
+	EventQueue events = EventFactory.createQueue();
 	Point pos = new Point();
 	int width;
 	int height;
@@ -595,6 +617,92 @@ public class Window implements Runnable {
 		return (false);
 	}
 	
+	/**
+	 * Sets how many times per second the nodes in this window step.  The
+	 * step rate is independent of the frame rate: when frames take longer
+	 * than a step, several steps run before drawing, and when they are
+	 * shorter, some frames draw without stepping.  Every step covers the
+	 * same amount of time, so the simulation behaves the same on any
+	 * monitor.  The default is 60.
+	 * 
+	 * @param rate the steps per second, or 0 to step once every frame
+	 */
+	public void setStepRate(double rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException("Step rate must be >= 0");
+		}
+		
+		stepLength = (rate == 0) ? 0 : (long) (1000000000L / rate);
+	}
+	
+	/**
+	 * Sets the most steps that may run before a frame is drawn.  If the
+	 * window falls further behind than this, the extra time is dropped
+	 * instead of being caught up on, so a slow frame can not snowball.
+	 * 
+	 * @param max the most steps per frame
+	 */
+	public void setMaxStepsPerFrame(int max) {
+		if (max < 1) {
+			throw new IllegalArgumentException("Max steps per frame must be > 0");
+		}
+		
+		maxSteps = max;
+	}
+	
+	/**
+	 * Sets whether this window steps its nodes on a separate simulation
+	 * thread.  When pipelined, the simulation thread steps the nodes for
+	 * the next frame while this window's thread draws a snapshot of the
+	 * previous one, so slow steps do not hold up drawing.  The snapshot
+	 * is made of each DrawableNode's RenderState; nodes that do not
+	 * capture one are drawn directly and still wait on their lock.
+	 * <p>
+	 * Steps run on the simulation thread, which has no OpenGL context, so
+	 * Window.getCurrentWindow returns null there.  Use getWindow instead.
+	 * If a step throws an exception, it is logged and the window goes back
+	 * to stepping on its own thread.
+	 * 
+	 * @param b whether to step on a separate thread
+	 * @see de.jjco.components.DrawableNode#captureRenderState(de.jjco.components.RenderState)
+	 */
+	public void setPipelined(boolean b) {
+		pipelined = b;
+	}
+	
+	/**
+	 * Adds a transform store to be swept after this window steps, so
+	 * the world transforms of the nodes in it are resolved in one pass
+	 * instead of one node at a time.
+	 * 
+	 * @param s the store
+	 * @see TransformStore
+	 */
+	public void addTransformStore(TransformStore s) {
+		stores.addIfAbsent(s);
+	}
+	
+	/**
+	 * Stops sweeping a transform store after this window steps.
+	 * 
+	 * @param s the store
+	 */
+	public void removeTransformStore(TransformStore s) {
+		stores.remove(s);
+	}
+	
+	/**
+	 * Runs a task on this window's simulation thread at the start of
+	 * the next frame, before any node steps or is drawn.  Use this to
+	 * change the node tree from another thread, or from inside step,
+	 * without disturbing the nodes currently being stepped.
+	 * 
+	 * @param r the task
+	 */
+	public void invokeLater(Runnable r) {
+		later.offer(r);
+	}
+	
 	/**
 	 * Switches the root node that the window is currently rendering.
 	 * <p>
@@ -1011,53 +1119,247 @@ public class Window implements Runnable {
 		return floating;
 	}
 	
+	/**
+	 * Gets how many times per second the nodes in this window step.
+	 * 
+	 * @return the steps per second, or 0 if they step once every frame
+	 */
+	public double getStepRate() {
+		long len = stepLength;
+		return (len == 0 ? 0 : 1000000000.0 / len);
+	}
+	
+	/**
+	 * Gets the most steps that may run before a frame is drawn.
+	 * 
+	 * @return the most steps per frame
+	 */
+	public int getMaxStepsPerFrame() {
+		return (maxSteps);
+	}
+	
+	/**
+	 * Gets the nanoseconds of simulated time that the current step covers.
+	 * 
+	 * @return the step length
+	 */
+	public long getStepLength() {
+		long len = stepLength;
+		return (len == 0 ? frameLength : len);
+	}
+	
+	/**
+	 * Gets whether this window steps its nodes on a separate thread.
+	 * 
+	 * @return if the window is pipelined
+	 */
+	public boolean isPipelined() {
+		return (pipelined);
+	}
+	
+	/**
+	 * Gets the total nanoseconds of simulated time, which is the sum of
+	 * the lengths of all the steps so far.  This should only be called
+	 * from the thread stepping this window.
+	 * 
+	 * @return the simulated time
+	 */
+	public long getSimulationTime() {
+		return (simTime);
+	}
+	
+	/**
+	 * Gets how far the current frame is between the last step and the
+	 * next one, as a fraction of the step length.  Drawing can blend the
+	 * state of the last two steps by this amount.  This is always 1 when
+	 * stepping once every frame.
+	 * 
+	 * @return the interpolation amount from 0 to 1
+	 */
+	public double getInterpolationAlpha() {
+		return (alpha);
+	}
+	
 	@Override
 	public void run() {
 		// Create the window context and set it up
 		GLFW.glfwMakeContextCurrent(hwnd);
 		GLFW.glfwSwapInterval(1);
+		bound.set(this);
 		
 		GLContext.createFromCurrent();
 		ws.setupWindow();
+		lastAdvance = System.nanoTime();
+		
 		while (!shouldClose) {
+			if (pipelined != (simulation != null)) {
+				if (pipelined) {
+					startSimulation();
+				} else {
+					stopSimulation();
+				}
+			}
+			
 			// Do resource stuff and draw the window
 			ResourceManager.doGLLoadingAndDestroying();
 			ws.setupDraw();
-			stepNode(current);
 			
-			if (viewports.isEmpty()) {
-				renderWithViewport(Viewport.getIdentity());
+			if (simulation == null) {
+				advance();
+				render(null);
 			} else {
-				for (Viewport v : viewports) {
-					renderWithViewport(v);
+				// Take the newest snapshot, if there is one, and let the simulation continue
+				if (ready.get().fresh) {
+					RenderSnapshot s = ready.getAndSet(front);
+					s.fresh = false;
+					front = s;
+					LockSupport.unpark(simulation);
 				}
+				
+				render(front);
 			}
 			
 			GLFW.glfwSwapBuffers(hwnd);
 		}
 		
 		// Destroy the window
+		stopSimulation();
+		bound.remove();
 		active.remove(this);
 		ToXicity.getInstance().addAndWait(Commands.DESTROY_WINDOW, this);
 	}
 	
-	private void stepNode(CompNode cn) {
+	private void advance() {
+		long now = System.nanoTime();
+		frameLength = now - lastAdvance;
+		lastAdvance = now;
+		
+		// Run the tasks and deliver the events queued for this window
+		later.deliverAll();
+		events.deliverAll();
+		
+		// Step as many times as the elapsed time calls for
+		long len = stepLength;
+		if (len == 0) {
+			acc = 0;
+			step(frameLength);
+			alpha = 1;
+		} else {
+			acc += frameLength;
+			for (int i = maxSteps; acc >= len && i > 0; i--) {
+				step(len);
+				acc -= len;
+			}
+			
+			if (acc >= len) {
+				acc %= len;
+			}
+			
+			alpha = (double) acc / len;
+		}
+		
+		for (TransformStore s : stores) {
+			s.sweep();
+		}
+	}
+	
+	private void startSimulation() {
+		simulating = true;
+		simulation = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (simulating) {
+						advance();
+						back.capture(current, alpha);
+						back.fresh = true;
+						back = ready.getAndSet(back);
+						
+						// Stay one frame ahead of the render thread
+						while (simulating && ready.get().fresh) {
+							LockSupport.park(this);
+						}
+					}
+				} catch (RuntimeException e) {
+					// Step on the render thread from now on, rather than drawing the last snapshot forever
+					EngineLog.logException("Simulation of window " + hwnd + " stopped, no longer pipelined");
+					EngineLog.logException(e);
+					pipelined = false;
+				}
+			}
+		});
+		
+		simulation.setName("ToXicity Simulation " + hwnd);
+		simulation.start();
+	}
+	
+	private void stopSimulation() {
+		if (simulation == null) {
+			return;
+		}
+		
+		simulating = false;
+		LockSupport.unpark(simulation);
+		
+		boolean interrupted = false;
+		while (true) {
+			try {
+				simulation.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		simulation = null;
+	}
+	
+	private void step(long len) {
+		// Each step gets its own input, so edges are seen exactly once
+		input.publish();
+		simTime += len;
+		stepNode(current);
+	}
+	
+	void stepNode(CompNode cn) {
 		synchronized (cn.getUnsafeLock()) {
 			if (cn.getParent() != null && cn.getWindow() != null) {
 				cn.step();
 			}
 		}
 		
-		for (CompNode child : cn.getChildren()) {
-			stepNode(child);
+		if (cn.hasParallelChildren()) {
+			StepPool.stepChildren(this, cn.getChildren());
+		} else {
+			for (CompNode child : cn.getChildren()) {
+				stepNode(child);
+			}
 		}
 	}
 	
-	private void renderWithViewport(Viewport v) {
+	private void render(RenderSnapshot snap) {
+		if (viewports.isEmpty()) {
+			renderWithViewport(Viewport.getIdentity(), snap);
+		} else {
+			for (Viewport v : viewports) {
+				renderWithViewport(v, snap);
+			}
+		}
+	}
+	
+	private void renderWithViewport(Viewport v, RenderSnapshot snap) {
 		if (v.isEnabled()) {
 			v.bind();
 			
-			ws.renderSceneNode(current);
+			if (snap == null) {
+				ws.renderSceneNode(current);
+			} else {
+				ws.renderSnapshot(snap);
+			}
 		}
 	}
 	
@@ -1075,7 +1377,7 @@ public class Window implements Runnable {
 			return (false);
 		}
 		
-		active.add(this);
+		active.put(this);
 		firstOpened = true;
 		new Thread(this).start();
 		GLFW.glfwShowWindow(hwnd);
@@ -1122,18 +1424,19 @@ public class Window implements Runnable {
 		DoubleBuffer db1 = BufferUtils.createDoubleBuffer(1);
 		DoubleBuffer db2 = BufferUtils.createDoubleBuffer(1);
 		GLFW.glfwGetCursorPos(hwnd, db1, db2);
-		input.cursorPos.setX(db1.get());
-		input.cursorPos.setY(db2.get());
-		input.mouseInside = input.cursorPos.getX() != 0 || input.getCursorPosition().getY() != 0;
+		double cx = db1.get();
+		double cy = db2.get();
 		
 		for (int i = 0; i <= GLFW.GLFW_MOUSE_BUTTON_LAST; i++) {
-			input.mouse[i] = GLFW.glfwGetMouseButton(hwnd, i) == GLFW.GLFW_PRESS;
+			input.setMouseButton(i, GLFW.glfwGetMouseButton(hwnd, i) == GLFW.GLFW_PRESS);
 		}
 		
 		for (int i = 0; i <= GLFW.GLFW_KEY_LAST; i++) {
-			input.keys[i] = GLFW.glfwGetKey(hwnd, i) == GLFW.GLFW_PRESS;
+			input.setKey(i, GLFW.glfwGetKey(hwnd, i) == GLFW.GLFW_PRESS);
 		}
 		
+		input.reset(cx, cy, cx != 0 || cy != 0);
+		
 		EngineLog.logGeneral("Finished");
 		return (true);
 	}
@@ -1145,13 +1448,7 @@ public class Window implements Runnable {
 	 * @return the Window
 	 */
 	public static Window getWindow(long hwnd) {
-		for (Window w : active) {
-			if (w.getHandle() == hwnd) {
-				return (w);
-			}
-		}
-		
-		return (null);
+		return (active.get(hwnd));
 	}
 	
 	/**
@@ -1160,6 +1457,11 @@ public class Window implements Runnable {
 	 * @return the current Window
 	 */
 	public static Window getCurrentWindow() {
+		Window w = bound.get();
+		if (w != null) {
+			return (w);
+		}
+		
 		return (getWindow(GLFW.glfwGetCurrentContext()));
 	}
 	
@@ -1169,9 +1471,7 @@ public class Window implements Runnable {
 	 * @return active windows
 	 */
 	public static Window[] getWindows() {
-		Window[] ws = new Window[active.size()];
-		active.toArray(ws);
-		return (ws);
+		return (active.values());
 	}
 	
 	/**
@@ -1182,7 +1482,7 @@ public class Window implements Runnable {
 	 * @return whether ToXicity should shut down.
 	 */
 	public static boolean canShutdown() {
-		return (active.isEmpty() && firstOpened);
+		return (active.size() == 0 && firstOpened);
 	}
 	
 	private class RootNode extends CompNode {
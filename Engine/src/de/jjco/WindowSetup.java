@@ -39,6 +39,27 @@ public abstract class WindowSetup {
 	 */
 	public abstract void renderSceneNode(CompNode sn);
 	
+	/**
+	 * Renders a snapshot of a window's nodes.  This is used instead of
+	 * renderSceneNode when the window is pipelined, and does not touch
+	 * the nodes themselves.
+	 * 
+	 * @param snap the snapshot to render
+	 * @see Window#setPipelined(boolean)
+	 */
+	public void renderSnapshot(RenderSnapshot snap) {
+		for (int i = 0; i < snap.size(); i++) {
+			GL11.glPushMatrix();
+			GL11.glTranslated(snap.getX(i), snap.getY(i), 0);
+			GL11.glRotated(snap.getAngle(i), 0, 0, 1);
+			snap.draw(i);
+			
+			for (int n = snap.getEnd(i); n > 0; n--) {
+				GL11.glPopMatrix();
+			}
+		}
+	}
+
 	static class WindowSetupImpl extends WindowSetup {
 		@Override
 		public void setupWindow() {
@@ -72,7 +93,7 @@ public abstract class WindowSetup {
 			if (sn instanceof DrawableNode) {
 				synchronized (sn.getUnsafeLock()) {
 					if (sn.getParent() != null && sn.getWindow() != null) {
-						((DrawableNode) sn).draw();
+						((DrawableNode) sn).draw(sn.getWindow().getInterpolationAlpha());
 					}
 				}
 			}
@@ -0,0 +1,142 @@
+package de.jjco;
+
+/**
+ * Maps GLFW window handles to their Windows without boxing the handles.
+ * Lookups read an immutable open-addressed table and never lock, which
+ * keeps the GLFW callbacks cheap.  Adding and removing copy the table,
+ * which is fine since windows are rarely created or destroyed.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ */
+class WindowTable {
+	private volatile Table table = new Table(8);
+	
+	/**
+	 * Gets the Window with the specified handle.
+	 * 
+	 * @param hwnd the window handle
+	 * @return the Window, or null
+	 */
+	Window get(long hwnd) {
+		return (table.get(hwnd));
+	}
+	
+	/**
+	 * Adds a Window under its handle.
+	 * 
+	 * @param w the Window
+	 */
+	synchronized void put(Window w) {
+		Table old = table;
+		Table t = new Table(old.size + 1);
+		
+		for (int i = 0; i < old.size; i++) {
+			Window x = old.values[i];
+			if (x.getHandle() != w.getHandle()) {
+				t.insert(x);
+			}
+		}
+		
+		t.insert(w);
+		table = t;
+	}
+	
+	/**
+	 * Removes a Window.
+	 * 
+	 * @param w the Window
+	 */
+	synchronized void remove(Window w) {
+		Table old = table;
+		Table t = new Table(old.size);
+		
+		for (int i = 0; i < old.size; i++) {
+			Window x = old.values[i];
+			if (x != w) {
+				t.insert(x);
+			}
+		}
+		
+		table = t;
+	}
+	
+	/**
+	 * Gets all Windows in this table.
+	 * 
+	 * @return a new array of Windows
+	 */
+	Window[] values() {
+		Table t = table;
+		Window[] ret = new Window[t.size];
+		System.arraycopy(t.values, 0, ret, 0, t.size);
+		return (ret);
+	}
+	
+	/**
+	 * @return the number of Windows in this table
+	 */
+	int size() {
+		return (table.size);
+	}
+	
+	private static class Table {
+		private final long[] keys;
+		private final Window[] slots;
+		private final int mask;
+		private Window[] values;
+		private int size;
+		
+		private Table(int expected) {
+			int cap = 8;
+			while (cap < expected * 2) {
+				cap <<= 1;
+			}
+			
+			keys = new long[cap];
+			slots = new Window[cap];
+			mask = cap - 1;
+			values = new Window[expected];
+		}
+		
+		private void insert(Window w) {
+			int i = hash(w.getHandle()) & mask;
+			while (slots[i] != null) {
+				i = (i + 1) & mask;
+			}
+			
+			keys[i] = w.getHandle();
+			slots[i] = w;
+			
+			if (size == values.length) {
+				Window[] grown = new Window[size + 1];
+				System.arraycopy(values, 0, grown, 0, size);
+				values = grown;
+			}
+			
+			values[size++] = w;
+		}
+		
+		private Window get(long hwnd) {
+			int i = hash(hwnd) & mask;
+			Window w;
+			
+			while ((w = slots[i]) != null) {
+				if (keys[i] == hwnd) {
+					return (w);
+				}
+				
+				i = (i + 1) & mask;
+			}
+			
+			return (null);
+		}
+		
+		private static int hash(long h) {
+			h ^= h >>> 33;
+			h *= 0xff51afd7ed558ccdL;
+			h ^= h >>> 33;
+			return ((int) h);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package de.jjco.components;
+
+import de.jjco.graphics.SpriteBatch;
+
+/**
+ * A RenderState that can add itself to a SpriteBatch instead of
+ * drawing right away.  Render states that do not implement this are
+ * drawn on their own, which makes the batch flush first.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see DrawableNode#draw(SpriteBatch, double)
+ */
+public interface BatchedRenderState extends RenderState {
+	/**
+	 * Adds the copied state to a batch, which has the node's transform
+	 * applied.  This is called on the render thread.
+	 * 
+	 * @param batch the batch
+	 * @param alpha the interpolation amount from 0 to 1
+	 */
+	public void draw(SpriteBatch batch, double alpha);
+}
@@ -0,0 +1,178 @@
+package de.jjco.components;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The children of a CompNode.  Each child remembers its slot in the
+ * array, so adding and removing are constant time: adding fills the
+ * next slot and removing clears the child's own slot.  The array is
+ * compacted into a new one once most of its slots are empty.
+ * <p>
+ * Iterating never copies, and only locks long enough to take the
+ * current array.  An iterator covers the children present when it was
+ * created, so stepping and rendering can walk the list while children
+ * are being added and removed from other threads.  Children removed
+ * since may or may not be returned, which is why the Window checks
+ * each node's parent before stepping or drawing it.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see CompNode#getChildren()
+ */
+class ChildList extends AbstractList<CompNode> {
+	private static final CompNode[] EMPTY = new CompNode[0];
+	
+	private CompNode[] items = EMPTY;
+	private volatile int end;
+	private volatile int live;
+	
+	/**
+	 * Adds a child to the end of the list.
+	 * 
+	 * @param cn the child
+	 */
+	synchronized void append(CompNode cn) {
+		if (end == items.length) {
+			// Grow into a new array, so iterators keep the old one intact
+			compact(Math.max(4, live * 2));
+		}
+		
+		items[end] = cn;
+		cn.childSlot = end;
+		live++;
+		end++;
+	}
+	
+	/**
+	 * Removes a child from the list.
+	 * 
+	 * @param cn the child
+	 */
+	synchronized void unlink(CompNode cn) {
+		int i = cn.childSlot;
+		if (i < end && items[i] == cn) {
+			items[i] = null;
+			live--;
+			
+			if (end > 8 && live < end / 4) {
+				compact(Math.max(4, live * 2));
+			}
+		}
+	}
+	
+	private void compact(int cap) {
+		CompNode[] next = new CompNode[cap];
+		int n = 0;
+		for (int i = 0; i < end; i++) {
+			CompNode cn = items[i];
+			if (cn != null) {
+				next[n] = cn;
+				cn.childSlot = n++;
+			}
+		}
+		
+		items = next;
+		end = n;
+	}
+	
+	@Override
+	public CompNode get(int index) {
+		CompNode[] arr;
+		int n;
+		synchronized (this) {
+			arr = items;
+			n = end;
+		}
+		
+		int left = index;
+		for (int i = 0; i < n; i++) {
+			if (arr[i] != null && left-- == 0) {
+				return (arr[i]);
+			}
+		}
+		
+		throw new IndexOutOfBoundsException("Index: " + index);
+	}
+	
+	@Override
+	public int size() {
+		return (live);
+	}
+	
+	@Override
+	public boolean isEmpty() {
+		return (live == 0);
+	}
+	
+	@Override
+	public Object[] toArray() {
+		CompNode[] arr;
+		int n;
+		synchronized (this) {
+			arr = items;
+			n = end;
+		}
+		
+		Object[] ret = new Object[n];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			CompNode cn = arr[i];
+			if (cn != null) {
+				ret[k++] = cn;
+			}
+		}
+		
+		return (k == n ? ret : Arrays.copyOf(ret, k));
+	}
+	
+	@Override
+	public Iterator<CompNode> iterator() {
+		synchronized (this) {
+			return (new Itr(items, end));
+		}
+	}
+	
+	private static class Itr implements Iterator<CompNode> {
+		private final CompNode[] arr;
+		private final int end;
+		private int i;
+		private CompNode next;
+		
+		private Itr(CompNode[] a, int e) {
+			arr = a;
+			end = e;
+			advance();
+		}
+		
+		private void advance() {
+			next = null;
+			while (next == null && i < end) {
+				next = arr[i++];
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return (next != null);
+		}
+		
+		@Override
+		public CompNode next() {
+			CompNode cn = next;
+			if (cn == null) {
+				throw new NoSuchElementException();
+			}
+			
+			advance();
+			return (cn);
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -111,11 +111,12 @@ public class CollisionNode extends DrawableNode {
 	@Override
 	public void draw() {
 		if (draw) {
-			Point rp = getRenderingPos();
+			double rx = getRenderingX();
+			double ry = getRenderingY();
 			de.jjco.Color.WHITE.bind();
 			org.lwjgl.opengl.GL11.glBegin(org.lwjgl.opengl.GL11.GL_LINE_LOOP);
 			for (Point vert : obj.getVertices()) {
-				org.lwjgl.opengl.GL11.glVertex2d(vert.getX() - rp.getX(), vert.getY() - rp.getY());
+				org.lwjgl.opengl.GL11.glVertex2d(vert.getX() - rx, vert.getY() - ry);
 			}
 			
 			org.lwjgl.opengl.GL11.glEnd();
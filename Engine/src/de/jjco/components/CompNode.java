@@ -4,9 +4,6 @@ import de.jjco.Point;
 import de.jjco.Window;
 
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-
-import org.lwjgl.system.glfw.GLFW;
 
 /**
  * This class represents a node on the engine tree.
@@ -14,8 +11,8 @@ import org.lwjgl.system.glfw.GLFW;
  * It also has a position (x, y, z) and a direction, all
  * relative to its parent.  
  * 
- * Lastly, there is a method that will return the milliseconds
- * elapsed between the last step call.
+ * Lastly, there are methods that will return the time
+ * that each step call covers.
  * 
  * @author Jared Jonas (bluesun212)
  * @version Revision 1
@@ -25,23 +22,41 @@ public class CompNode {
 	
 	private CompNode parent;
 	private Window wnd;
-	private CopyOnWriteArrayList<CompNode> children;
+	private ChildList children;
 	
-	private Point pos;
-	private Point rPos;
+	// The slot in the parent's ChildList, guarded by it
+	int childSlot;
+
+	// Local transform, guarded by transform
+	private final Object transform = new Object();
+	private double x, y, z = 1;
 	private double dir;
+	private int version;
 	
-	private long lastStepCalled = 0;
+	// World transform, resolved from the parent's when read
+	private double wx, wy, wz;
+	private double wdir, wcos = 1, wsin;
+	private int resolvedVersion = -1;
+	private CompNode resolvedParent;
+	private int parentStamp;
+	private int worldStamp;
+	
+	// Set when a TransformStore holds the transform instead
+	private volatile TransformStore store;
+	private int storeId;
+
 	private long interval = 0;
+	private volatile boolean parallel = false;
 	
+	// The NodePool this is waiting in, guarded by unsafe
+	NodePool<?> pool;
+
 	/**
 	 * Constructs a CompNode with its position at the origin 
 	 * (relative to its parent) and an empty list of children.
 	 */
 	public CompNode() {
-		children = new CopyOnWriteArrayList<CompNode>();
-		pos = new Point(0, 0, 1);
-		updateRenderingPosition();
+		children = new ChildList();
 	}
 	
 	/**
@@ -50,8 +65,14 @@ public class CompNode {
 	 * @param x the x position
 	 */
 	public void setX(double x) {
-		pos.setX(x);
-		updateRenderingPosition();
+		synchronized (transform) {
+			if (store != null) {
+				store.setX(storeId, x);
+			} else {
+				this.x = x;
+				version++;
+			}
+		}
 	}
 	
 	/**
@@ -60,8 +81,14 @@ public class CompNode {
 	 * @param y the y position
 	 */
 	public void setY(double y) {
-		pos.setY(y);
-		updateRenderingPosition();
+		synchronized (transform) {
+			if (store != null) {
+				store.setY(storeId, y);
+			} else {
+				this.y = y;
+				version++;
+			}
+		}
 	}
 	
 	/**
@@ -74,8 +101,14 @@ public class CompNode {
 	 * @param z the z position
 	 */
 	public void setZ(double z) {
-		pos.setZ(z);
-		updateRenderingPosition();
+		synchronized (transform) {
+			if (store != null) {
+				store.setZ(storeId, z);
+			} else {
+				this.z = z;
+				version++;
+			}
+		}
 	}
 	
 	/**
@@ -85,9 +118,15 @@ public class CompNode {
 	 * @param y the y position
 	 */
 	public void setPosition(double x, double y) {
-		pos.setX(x);
-		pos.setY(y);
-		updateRenderingPosition();
+		synchronized (transform) {
+			if (store != null) {
+				store.setPosition(storeId, x, y);
+			} else {
+				this.x = x;
+				this.y = y;
+				version++;
+			}
+		}
 	}
 	
 	/**
@@ -97,8 +136,15 @@ public class CompNode {
 	 * @param y the y amount
 	 */
 	public void move(double x, double y) {
-		pos.add(x, y);
-		updateRenderingPosition();
+		synchronized (transform) {
+			if (store != null) {
+				store.move(storeId, x, y, 0);
+			} else {
+				this.x += x;
+				this.y += y;
+				version++;
+			}
+		}
 	}
 	
 	/**
@@ -109,8 +155,16 @@ public class CompNode {
 	 * @param z the z amount
 	 */
 	public void move(double x, double y, double z) {
-		pos.add(x, y, z);
-		updateRenderingPosition();
+		synchronized (transform) {
+			if (store != null) {
+				store.move(storeId, x, y, z);
+			} else {
+				this.x += x;
+				this.y += y;
+				this.z += z;
+				version++;
+			}
+		}
 	}
 	
 	/**
@@ -119,8 +173,7 @@ public class CompNode {
 	 * @param p the point
 	 */
 	public void move(Point p) {
-		pos.add(p);
-		updateRenderingPosition();
+		move(p.getX(), p.getY(), p.getZ());
 	}
 	
 	/**
@@ -131,20 +184,26 @@ public class CompNode {
 	 * @param z the z position
 	 */
 	public void setPosition(double x, double y, double z) {
-		pos.setX(x);
-		pos.setY(y);
-		pos.setZ(z);
-		updateRenderingPosition();
+		synchronized (transform) {
+			if (store != null) {
+				store.setPosition(storeId, x, y, z);
+			} else {
+				this.x = x;
+				this.y = y;
+				this.z = z;
+				version++;
+			}
+		}
 	}
 	
 	/**
-	 * Sets this node's position.
+	 * Sets this node's position.  The point is copied, so changing
+	 * it afterwards does not move this node.
 	 * 
 	 * @param p the x y position
 	 */
 	public void setPosition(Point p) {
-		pos = p;
-		updateRenderingPosition();
+		setPosition(p.getX(), p.getY(), p.getZ());
 	}
 	
 	/**
@@ -153,7 +212,14 @@ public class CompNode {
 	 * @param a angle
 	 */
 	public void setAngle(double a) {
-		dir = a;
+		synchronized (transform) {
+			if (store != null) {
+				store.setAngle(storeId, a);
+			} else {
+				dir = a;
+				version++;
+			}
+		}
 	}
 	
 	/**
@@ -162,7 +228,8 @@ public class CompNode {
 	 * @return the x position
 	 */
 	public double getX() {
-		return (pos.getX());
+		TransformStore s = store;
+		return (s != null ? s.lx[storeId] : x);
 	}
 	
 	/**
@@ -171,7 +238,8 @@ public class CompNode {
 	 * @return the y position
 	 */
 	public double getY() {
-		return (pos.getY());
+		TransformStore s = store;
+		return (s != null ? s.ly[storeId] : y);
 	}
 	
 	/**
@@ -180,7 +248,8 @@ public class CompNode {
 	 * @return the z position
 	 */
 	public double getZ() {
-		return (pos.getZ());
+		TransformStore s = store;
+		return (s != null ? s.lz[storeId] : z);
 	}
 	
 	/**
@@ -189,7 +258,13 @@ public class CompNode {
 	 * @return the position
 	 */
 	public Point getPosition() {
-		return (pos.copy());
+		synchronized (transform) {
+			if (store != null) {
+				return (new Point(store.lx[storeId], store.ly[storeId], store.lz[storeId]));
+			}
+			
+			return (new Point(x, y, z));
+		}
 	}
 	
 	/**
@@ -198,7 +273,8 @@ public class CompNode {
 	 * @return the angle
 	 */
 	public double getAngle() {
-		return (dir);
+		TransformStore s = store;
+		return (s != null ? s.la[storeId] : dir);
 	}
 	
 	/**
@@ -210,18 +286,23 @@ public class CompNode {
 	public void reparentTo(CompNode p) {
 		synchronized (unsafe) {
 			if (parent != null) {
-				parent.children.remove(this);
+				parent.children.unlink(this);
 			}
 			
 			parent = p;
+			synchronized (transform) {
+				if (store != null) {
+					store.setParent(storeId, p);
+				}
+			}
+			
 			if (parent != null) {
-				parent.children.add(this);
+				parent.children.append(this);
 				updateWindow(parent.getWindow());
 			} else {
 				updateWindow(null);
 			}
 			
-			updateRenderingPosition();
 			onReparent();
 		}
 	}
@@ -255,7 +336,9 @@ public class CompNode {
 	}
 	
 	/**
-	 * Gets all the children belonging to this node.
+	 * Gets all the children belonging to this node.  The list can
+	 * be iterated while children are being added or removed, but
+	 * it can not be changed directly; use reparentTo instead.
 	 * 
 	 * @return the children
 	 */
@@ -264,14 +347,56 @@ public class CompNode {
 	}
 	
 	/**
-	 * The milliseconds elapsed since step was called last.
+	 * The milliseconds of simulated time the current step covers,
+	 * rounded down.  Use getStepInterval for the exact time.
 	 * 
-	 * @return ms since last step called
+	 * @return ms covered by this step
 	 */
 	public long getTimeBetweenStepInterval() {
+		return (interval / 1000000);
+	}
+	
+	/**
+	 * The nanoseconds of simulated time the current step covers.  When
+	 * the Window runs at a fixed step rate, this is the same every step.
+	 * 
+	 * @return ns covered by this step
+	 * @see Window#setStepRate(double)
+	 */
+	public long getStepInterval() {
 		return (interval);
 	}
 	
+	/**
+	 * Sets whether the children of this node may step at the same time
+	 * on different threads.  Each child and its own children still step
+	 * in order on one thread, and all of them have finished stepping
+	 * before the Window draws.
+	 * <p>
+	 * Only enable this when the children's step methods do not touch each
+	 * other, or any other shared state, without synchronizing.  Only step
+	 * runs concurrently, and draw is never called from the step threads.
+	 * A step that adds, removes or reparents nodes would change the tree
+	 * while its siblings step, so it must do so through Window.invokeLater
+	 * instead.  Window.getCurrentWindow returns null on the step threads,
+	 * so use getWindow instead.
+	 * 
+	 * @param b whether the children may step concurrently
+	 */
+	public void setParallelChildren(boolean b) {
+		parallel = b;
+	}
+	
+	/**
+	 * Checks to see if the children of this node may step at the
+	 * same time on different threads.
+	 * 
+	 * @return whether the children may step concurrently
+	 */
+	public boolean hasParallelChildren() {
+		return (parallel);
+	}
+	
 	/**
 	 * Called when this object needs to update.  OpenGL
 	 * calls should not be made in this function, as it 
@@ -279,9 +404,8 @@ public class CompNode {
 	 * thread.
 	 */
 	public void step() {
-		long time = (long) (GLFW.glfwGetTime() * 1000);
-		interval = time - lastStepCalled;
-		lastStepCalled = time;
+		Window w = getWindow();
+		interval = (w != null) ? w.getStepLength() : 0;
 	}
 	
 	/**
@@ -292,6 +416,27 @@ public class CompNode {
 		
 	}
 	
+	/**
+	 * Called when a NodePool hands this node out, before it is parented
+	 * to anything.  Reset any state left over from its last use here.
+	 * 
+	 * @see NodePool#acquire()
+	 */
+	public void onPoolAcquire() {
+		
+	}
+	
+	/**
+	 * Called when this node has been detached from its parent and is
+	 * going back into a NodePool.  Release anything it should not hold
+	 * on to while it waits, such as event listeners.
+	 * 
+	 * @see NodePool#release(CompNode)
+	 */
+	public void onPoolRelease() {
+		
+	}
+
 	/**
 	 * Gets the window coordinates where
 	 * this is being drawn.
@@ -299,17 +444,195 @@ public class CompNode {
 	 * @return position rendered on screen
 	 */
 	public Point getRenderingPos() {
-		return (rPos.copy());
+		resolve();
+		synchronized (transform) {
+			if (store != null) {
+				return (new Point(store.wx[storeId], store.wy[storeId], store.wz[storeId]));
+			}
+			
+			return (new Point(wx, wy, wz));
+		}
+	}
+	
+	/**
+	 * Gets the window X coordinate where this is being drawn.
+	 * 
+	 * @return x position rendered on screen
+	 */
+	public double getRenderingX() {
+		resolve();
+		TransformStore s = store;
+		return (s != null ? s.wx[storeId] : wx);
+	}
+	
+	/**
+	 * Gets the window Y coordinate where this is being drawn.
+	 * 
+	 * @return y position rendered on screen
+	 */
+	public double getRenderingY() {
+		resolve();
+		TransformStore s = store;
+		return (s != null ? s.wy[storeId] : wy);
+	}
+	
+	/**
+	 * Gets the angle this is being drawn at, which is the sum
+	 * of its angle and all of its parents' angles.
+	 * 
+	 * @return angle rendered on screen
+	 */
+	public double getRenderingAngle() {
+		resolve();
+		TransformStore s = store;
+		return (s != null ? s.wa[storeId] : wdir);
+	}
+	
+	/*
+	 * Brings the world transform up to date, if this node or any parent
+	 * has changed since it was last resolved.  Changes only bump a
+	 * version, so moving a node never touches its children; they notice
+	 * that their parent's stamp has changed the next time they are read.
+	 */
+	private void resolve() {
+		TransformStore s = store;
+		if (s != null) {
+			s.resolve(storeId);
+			return;
+		}
+		
+		CompNode p = parent;
+		if (p != null) {
+			p.resolve();
+		}
+		
+		synchronized (transform) {
+			if (store != null) {
+				return;
+			} else if (p == null) {
+				derive(null, 0, 0, 0, 0, 1, 0, 0);
+				return;
+			}
+			
+			// Locks are only ever taken from child to parent
+			TransformStore ps = p.store;
+			if (ps != null) {
+				synchronized (ps.lock) {
+					int i = p.storeId;
+					derive(p, ps.wx[i], ps.wy[i], ps.wz[i], ps.wa[i], ps.wcos[i], ps.wsin[i], ps.worldStamp[i]);
+				}
+			} else {
+				synchronized (p.transform) {
+					derive(p, p.wx, p.wy, p.wz, p.wdir, p.wcos, p.wsin, p.worldStamp);
+				}
+			}
+		}
+	}
+	
+	private void derive(CompNode p, double px, double py, double pz, double pdir, double pcos, double psin, int pstamp) {
+		if (resolvedVersion != version || resolvedParent != p || parentStamp != pstamp) {
+			// Children are drawn rotated by their parent, so rotate the offset too
+			wx = px + x * pcos - y * psin;
+			wy = py + x * psin + y * pcos;
+			wz = pz + z;
+			setWorldAngle(pdir + dir);
+			resolvedParent = p;
+			parentStamp = pstamp;
+			resolvedVersion = version;
+			worldStamp++;
+		}
+	}
+	
+	private void setWorldAngle(double a) {
+		if (a != wdir) {
+			wdir = a;
+			double r = Math.toRadians(a);
+			wcos = Math.cos(r);
+			wsin = Math.sin(r);
+		}
+	}
+	
+	/**
+	 * Gets the transform store holding this node's position and angle.
+	 * 
+	 * @return the store, or null if this node holds its own
+	 * @see TransformStore#add(CompNode)
+	 */
+	public TransformStore getTransformStore() {
+		return (store);
+	}
+	
+	int getTransformId() {
+		return (storeId);
 	}
 	
-	private void updateRenderingPosition() {
-		rPos = pos.copy();
-		if (parent != null) {
-			rPos.add(parent.rPos);
+	void attachTransform(TransformStore s) {
+		synchronized (transform) {
+			if (store == s) {
+				return;
+			} else if (store != null) {
+				releaseTransform();
+			}
+			
+			storeId = s.allocate(x, y, z, dir);
+			store = s;
+			s.setParent(storeId, parent);
 		}
 		
+		relinkChildren();
+	}
+	
+	void detachTransform() {
+		synchronized (transform) {
+			if (store == null) {
+				return;
+			}
+			
+			releaseTransform();
+		}
+		
+		relinkChildren();
+	}
+	
+	private void releaseTransform() {
+		double[] t = new double[4];
+		store.release(storeId, t);
+		x = t[0];
+		y = t[1];
+		z = t[2];
+		dir = t[3];
+		store = null;
+		version++;
+	}
+	
+	private void relinkChildren() {
 		for (CompNode cn : children) {
-			cn.updateRenderingPosition();
+			synchronized (cn.transform) {
+				if (cn.store != null) {
+					cn.store.setParent(cn.storeId, this);
+				} else {
+					cn.version++;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Copies this node's world transform, for a store that has
+	 * this node as the parent of one of its own.
+	 */
+	void readWorld(TransformStore.World w) {
+		resolve();
+		TransformStore s = store;
+		if (s != null) {
+			synchronized (s.lock) {
+				int i = storeId;
+				w.set(s.wx[i], s.wy[i], s.wz[i], s.wa[i], s.wcos[i], s.wsin[i], s.worldStamp[i]);
+			}
+		} else {
+			synchronized (transform) {
+				w.set(wx, wy, wz, wdir, wcos, wsin, worldStamp);
+			}
 		}
 	}
 	
@@ -1,5 +1,9 @@
 package de.jjco.components;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.jjco.graphics.SpriteBatch;
+
 /**
  * This class is a subclass of CompNode that
  * will draw itself onto the screen.
@@ -8,8 +12,84 @@ package de.jjco.components;
  * @version Revision 1
  */
 public abstract class DrawableNode extends CompNode {
+	private static ConcurrentHashMap<Class<?>, Boolean> plainDraw = new ConcurrentHashMap<Class<?>, Boolean>();
+
 	/**
 	 * Called when the object needs to be drawn.
 	 */
 	public abstract void draw();
+	
+	/**
+	 * Called when the object needs to be drawn, with how far the
+	 * Window has gotten between the last step and the next one.
+	 * Override this instead of draw() to smooth out motion when
+	 * the step rate is lower than the frame rate.
+	 * 
+	 * @param alpha the interpolation amount from 0 to 1
+	 * @see de.jjco.Window#getInterpolationAlpha()
+	 */
+	public void draw(double alpha) {
+		draw();
+	}
+	
+	/**
+	 * Called instead of draw when the Window renders through a
+	 * SpriteBatch.  Add quads to the batch, which has this node's
+	 * transform applied, and return true; or return false to be drawn
+	 * the usual way, which makes the batch flush first.
+	 * <p>
+	 * By default this returns false.
+	 * 
+	 * @param batch the batch
+	 * @param alpha the interpolation amount from 0 to 1
+	 * @return whether this node was added to the batch
+	 * @see de.jjco.BatchedWindowSetup
+	 */
+	public boolean draw(SpriteBatch batch, double alpha) {
+		return (false);
+	}
+
+	/**
+	 * Copies everything needed to draw this node, so that it can be
+	 * drawn on another thread while this node steps.  This is only
+	 * called when the Window is pipelined, right after stepping.
+	 * <p>
+	 * By default this returns null, which makes the render thread call
+	 * draw directly while holding this node's lock.  That is always
+	 * safe, but it makes the render thread wait on steps.
+	 * 
+	 * @param old the state this returned last time for the same place
+	 * in the tree, which may be refilled instead of creating a new one,
+	 * or null
+	 * @return the copied state, or null to be drawn directly
+	 * @see de.jjco.Window#setPipelined(boolean)
+	 */
+	public RenderState captureRenderState(RenderState old) {
+		return (null);
+	}
+	
+	/**
+	 * Checks that a class still draws the way a base class does, so
+	 * the base class can copy or batch its drawing for it.  Subclasses
+	 * that override draw have to be drawn directly instead.
+	 * 
+	 * @param c the class
+	 * @param base the class that declares draw()
+	 * @return whether c does not override draw() or draw(double)
+	 */
+	static boolean drawsLike(Class<?> c, Class<?> base) {
+		Boolean b = plainDraw.get(c);
+		if (b == null) {
+			try {
+				b = c.getMethod("draw").getDeclaringClass() == base
+						&& c.getMethod("draw", double.class).getDeclaringClass() == DrawableNode.class;
+			} catch (NoSuchMethodException e) {
+				b = false;
+			}
+			
+			plainDraw.put(c, b);
+		}
+		
+		return (b);
+	}
 }
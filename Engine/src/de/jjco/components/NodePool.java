@@ -0,0 +1,173 @@
+package de.jjco.components;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.jjco.Window;
+
+/**
+ * Keeps released nodes around so they can be handed out again instead
+ * of being constructed from scratch, which saves both the construction
+ * and the garbage for nodes that come and go often, like bullets or
+ * particles.  Subclasses only need to say how to create a new node.
+ * <p>
+ * A node released while it belongs to a Window is detached at the start
+ * of that Window's next frame, so nodes can be released from inside step
+ * without disturbing the rest of the frame.  Its own children stay
+ * attached and go back into the pool with it.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @param <T> the type of node pooled
+ */
+public abstract class NodePool<T extends CompNode> {
+	private ConcurrentLinkedQueue<T> free;
+	private AtomicInteger size;
+	private int capacity;
+	
+	private AtomicLong hits;
+	private AtomicLong misses;
+	
+	/**
+	 * Creates a node pool.
+	 * 
+	 * @param cap the most nodes that may wait in the pool at once
+	 */
+	public NodePool(int cap) {
+		free = new ConcurrentLinkedQueue<T>();
+		size = new AtomicInteger();
+		capacity = cap;
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+	}
+	
+	/**
+	 * Creates a new node when the pool is empty.
+	 * 
+	 * @return the new node
+	 */
+	protected abstract T create();
+	
+	/**
+	 * Gets a node from the pool, or creates one if the pool is empty.
+	 * The node has no parent, and its onPoolAcquire method has been
+	 * called if it was pooled before.
+	 * 
+	 * @return the node
+	 */
+	public T acquire() {
+		T n = free.poll();
+		if (n == null) {
+			misses.incrementAndGet();
+			return (create());
+		}
+		
+		size.decrementAndGet();
+		hits.incrementAndGet();
+		
+		synchronized (n.getUnsafeLock()) {
+			n.pool = null;
+		}
+		
+		n.onPoolAcquire();
+		return (n);
+	}
+	
+	/**
+	 * Returns a node to the pool.  The node is detached from its parent
+	 * and its onPoolRelease method is called, at the start of its Window's
+	 * next frame if it belongs to one and right away if not.  The node
+	 * must not be used after this is called.
+	 * <p>
+	 * If the pool is already full, the node is detached and dropped.
+	 * 
+	 * @param n the node
+	 * @throws IllegalStateException if the node was already released
+	 */
+	public void release(final T n) {
+		synchronized (n.getUnsafeLock()) {
+			if (n.pool != null) {
+				throw new IllegalStateException("Node has already been released");
+			}
+			
+			n.pool = this;
+		}
+		
+		Window w = n.getWindow();
+		if (w != null) {
+			w.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					recycle(n);
+				}
+			});
+		} else {
+			recycle(n);
+		}
+	}
+	
+	/**
+	 * Creates nodes until the pool holds the specified number, so
+	 * they do not have to be created while the game is running.
+	 * 
+	 * @param count the number of nodes to hold
+	 */
+	public void fill(int count) {
+		count = Math.min(count, capacity);
+		while (size.get() < count) {
+			T n = create();
+			synchronized (n.getUnsafeLock()) {
+				n.pool = this;
+			}
+			
+			if (!offer(n)) {
+				break;
+			}
+		}
+	}
+	
+	private void recycle(T n) {
+		n.reparentTo(null);
+		n.onPoolRelease();
+		offer(n);
+	}
+	
+	private boolean offer(T n) {
+		if (size.incrementAndGet() > capacity) {
+			size.decrementAndGet();
+			return (false);
+		}
+		
+		free.add(n);
+		return (true);
+	}
+	
+	/**
+	 * @return the number of nodes waiting in the pool
+	 */
+	public int size() {
+		return (size.get());
+	}
+	
+	/**
+	 * @return the most nodes that may wait in the pool at once
+	 */
+	public int getCapacity() {
+		return (capacity);
+	}
+	
+	/**
+	 * @return the number of acquire calls that reused a pooled node
+	 */
+	public long getHits() {
+		return (hits.get());
+	}
+	
+	/**
+	 * @return the number of acquire calls that had to create a node
+	 */
+	public long getMisses() {
+		return (misses.get());
+	}
+}
@@ -0,0 +1,20 @@
+package de.jjco.components;
+
+/**
+ * A copy of everything a DrawableNode needs to draw itself, taken after
+ * it steps.  When a Window is pipelined, the copy is drawn on the render
+ * thread while the node is already stepping again on the simulation
+ * thread, so it must not read the node's fields.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see DrawableNode#captureRenderState(RenderState)
+ */
+public interface RenderState {
+	/**
+	 * Draws the copied state.  This is called on the render thread.
+	 * 
+	 * @param alpha the interpolation amount from 0 to 1
+	 */
+	public void draw(double alpha);
+}
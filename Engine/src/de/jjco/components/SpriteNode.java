@@ -2,6 +2,7 @@ package de.jjco.components;
 
 import de.jjco.Color;
 import de.jjco.graphics.Sprite;
+import de.jjco.graphics.SpriteBatch;
 
 /**
  * This class is a subset of CompNode that allows a
@@ -119,10 +120,10 @@ public class SpriteNode extends DrawableNode {
 		super.step();
 		
 		if ( getSprite() != null ) {
-			partialFrame += imgSpeed * (int)getTimeBetweenStepInterval();
+			partialFrame += imgSpeed * getStepInterval() / 1000000.0;
 			if ( partialFrame >= 1 ) {
+				frame += (int) partialFrame;
 				partialFrame -= (int) partialFrame;
-				frame++;
 			}
 			
 			if ( frame >= getSprite().getNumFrames() ) {
@@ -145,4 +146,54 @@ public class SpriteNode extends DrawableNode {
 		}
 	}
 	
+	@Override
+	public boolean draw(SpriteBatch batch, double alpha) {
+		// Subclasses that draw differently have to be drawn directly
+		if (!drawsLike(getClass(), SpriteNode.class)) {
+			return (false);
+		}
+		
+		if (getSprite() != null) {
+			getSprite().draw(batch, 0, 0, frame, col);
+		}
+		
+		return (true);
+	}
+	
+	@Override
+	public RenderState captureRenderState(RenderState old) {
+		// Subclasses that draw differently have to be drawn directly
+		if (!drawsLike(getClass(), SpriteNode.class)) {
+			return (null);
+		}
+		
+		SpriteState s = (old instanceof SpriteState) ? (SpriteState) old : new SpriteState();
+		s.sprite = sprite;
+		s.frame = frame;
+		s.col.setColor(col);
+		return (s);
+	}
+	
+	private static class SpriteState implements BatchedRenderState {
+		private Sprite sprite;
+		private int frame;
+		private Color col = Color.WHITE.clone();
+		
+		@Override
+		public void draw(double alpha) {
+			if (sprite != null) {
+				col.bind();
+				sprite.draw(0, 0, frame);
+				Color.WHITE.bind();
+			}
+		}
+		
+		@Override
+		public void draw(SpriteBatch batch, double alpha) {
+			if (sprite != null) {
+				sprite.draw(batch, 0, 0, frame, col);
+			}
+		}
+	}
+
 }
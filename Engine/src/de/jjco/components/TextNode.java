@@ -0,0 +1,210 @@
+package de.jjco.components;
+
+import de.jjco.Color;
+import de.jjco.graphics.Font;
+import de.jjco.graphics.SpriteBatch;
+import de.jjco.graphics.TextLayout;
+
+/**
+ * This class is a subset of CompNode that draws a line of text.  The
+ * text is only laid out again when it or the font changes, or the font
+ * is resized, so static text costs the same to draw as a sprite.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see TextLayout
+ */
+public class TextNode extends DrawableNode {
+	private Font font;
+	private String text = "";
+	private Color col = Color.WHITE.clone();
+	private int ha = Font.ALIGN_LEFT;
+	private int va = Font.ALIGN_TOP;
+	
+	// Dropped whenever the font or text changes, and made again when stale
+	private TextLayout layout;
+	
+	/**
+	 * Creates a text node with no font or text.
+	 */
+	public TextNode() {
+		
+	}
+	
+	/**
+	 * Creates a text node.
+	 * 
+	 * @param f the font
+	 * @param s the text
+	 */
+	public TextNode(Font f, String s) {
+		font = f;
+		setText(s);
+	}
+	
+	/**
+	 * @return the font the text is drawn in
+	 */
+	public Font getFont() {
+		return (font);
+	}
+	
+	/**
+	 * @return the text
+	 */
+	public String getText() {
+		return (text);
+	}
+	
+	/**
+	 * Gets the color that the text is drawn in.
+	 * 
+	 * @return the color
+	 */
+	public Color getColor() {
+		return (col);
+	}
+	
+	/**
+	 * @return the horizontal alignment
+	 */
+	public int getHAlign() {
+		return (ha);
+	}
+	
+	/**
+	 * @return the vertical alignment
+	 */
+	public int getVAlign() {
+		return (va);
+	}
+	
+	/**
+	 * Sets the font the text is drawn in.
+	 * 
+	 * @param f the font
+	 */
+	public void setFont(Font f) {
+		synchronized (getUnsafeLock()) {
+			if (f != font) {
+				font = f;
+				layout = null;
+			}
+		}
+	}
+	
+	/**
+	 * Sets the text.
+	 * 
+	 * @param s the text
+	 */
+	public void setText(String s) {
+		if (s == null) {
+			s = "";
+		}
+		
+		synchronized (getUnsafeLock()) {
+			if (!s.equals(text)) {
+				text = s;
+				layout = null;
+			}
+		}
+	}
+	
+	/**
+	 * Sets the color that the text is drawn in.
+	 * 
+	 * @param color the color
+	 */
+	public void setColor(Color color) {
+		col = color;
+	}
+	
+	/**
+	 * Sets where the text is drawn relative to this node.
+	 * 
+	 * @param ha the horizontal alignment, one of the Font ALIGN constants
+	 * @param va the vertical alignment, one of the Font ALIGN constants
+	 */
+	public void setAlign(int ha, int va) {
+		this.ha = ha;
+		this.va = va;
+	}
+	
+	/**
+	 * Gets the text laid out in the font, laying it out if needed.
+	 * 
+	 * @return the layout, or null if there is no font or it has not loaded
+	 */
+	public TextLayout getLayout() {
+		synchronized (getUnsafeLock()) {
+			if ((layout == null || layout.isStale()) && font != null) {
+				layout = font.getLayout(text);
+			}
+			
+			return (layout);
+		}
+	}
+	
+	@Override
+	public void draw() {
+		TextLayout l = getLayout();
+		if (l != null) {
+			col.bind();
+			l.draw(0, 0, ha, va);
+			Color.WHITE.bind();
+		}
+	}
+	
+	@Override
+	public boolean draw(SpriteBatch batch, double alpha) {
+		// Subclasses that draw differently have to be drawn directly
+		if (!drawsLike(getClass(), TextNode.class)) {
+			return (false);
+		}
+		
+		TextLayout l = getLayout();
+		if (l != null) {
+			l.draw(batch, 0, 0, ha, va, col);
+		}
+		
+		return (true);
+	}
+	
+	@Override
+	public RenderState captureRenderState(RenderState old) {
+		if (!drawsLike(getClass(), TextNode.class)) {
+			return (null);
+		}
+		
+		TextState s = (old instanceof TextState) ? (TextState) old : new TextState();
+		s.layout = getLayout();
+		s.ha = ha;
+		s.va = va;
+		s.col.setColor(col);
+		return (s);
+	}
+	
+	private static class TextState implements BatchedRenderState {
+		private TextLayout layout;
+		private int ha;
+		private int va;
+		private Color col = Color.WHITE.clone();
+		
+		@Override
+		public void draw(double alpha) {
+			if (layout != null) {
+				col.bind();
+				layout.draw(0, 0, ha, va);
+				Color.WHITE.bind();
+			}
+		}
+		
+		@Override
+		public void draw(SpriteBatch batch, double alpha) {
+			if (layout != null) {
+				layout.draw(batch, 0, 0, ha, va, col);
+			}
+		}
+	}
+}
@@ -0,0 +1,453 @@
+package de.jjco.components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * An optional backend that keeps the transforms of many nodes together
+ * in primitive arrays, instead of in each CompNode.  Nodes added to a
+ * store read and write their position and angle here, indexed by a slot
+ * number, and sweep resolves every world transform in one pass over the
+ * arrays, parents before children.
+ * <p>
+ * This pays off for large trees of nodes that move every step, like
+ * particles, where following each node's parent pointers is slow.  A
+ * store can be swept by its Window automatically after stepping, see
+ * Window.addTransformStore.  Nodes in a store may have parents and
+ * children outside of it.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see CompNode
+ */
+public class TransformStore {
+	private static final int NONE = -1;
+	private static final int OUTER = -2;
+	
+	final Object lock = new Object();
+	private int count;
+	private int used;
+	private int[] free = new int[16];
+	private int freeCount;
+	
+	// Local transforms
+	double[] lx, ly, lz, la;
+	
+	// World transforms
+	double[] wx, wy, wz, wa;
+	double[] wcos, wsin;
+	int[] worldStamp;
+	
+	private int[] parent;
+	private World[] outer;
+	private int[] version;
+	private int[] resolvedVersion;
+	private int[] parentStamp;
+	private boolean[] live;
+	
+	// Parents before children, rebuilt when the tree changes
+	private int[] order;
+	private int[] depth;
+	private int orderSize;
+	private boolean orderDirty;
+	
+	/**
+	 * Creates an empty transform store.
+	 */
+	public TransformStore() {
+		this(256);
+	}
+	
+	/**
+	 * Creates an empty transform store with room for the specified
+	 * number of nodes before it has to grow.
+	 * 
+	 * @param capacity the initial capacity
+	 */
+	public TransformStore(int capacity) {
+		int n = Math.max(16, capacity);
+		lx = new double[n];
+		ly = new double[n];
+		lz = new double[n];
+		la = new double[n];
+		wx = new double[n];
+		wy = new double[n];
+		wz = new double[n];
+		wa = new double[n];
+		wcos = new double[n];
+		wsin = new double[n];
+		worldStamp = new int[n];
+		parent = new int[n];
+		outer = new World[n];
+		version = new int[n];
+		resolvedVersion = new int[n];
+		parentStamp = new int[n];
+		live = new boolean[n];
+		order = new int[n];
+		depth = new int[n];
+	}
+	
+	/**
+	 * Moves a node's transform into this store.  If it was in another
+	 * store, it is taken out of that one first.
+	 * 
+	 * @param cn the node
+	 */
+	public void add(CompNode cn) {
+		cn.attachTransform(this);
+	}
+	
+	/**
+	 * Moves the transforms of a node and all of its children into
+	 * this store.
+	 * 
+	 * @param cn the root node
+	 */
+	public void addTree(CompNode cn) {
+		add(cn);
+		for (CompNode child : cn.getChildren()) {
+			addTree(child);
+		}
+	}
+	
+	/**
+	 * Moves a node's transform out of this store and back into the node.
+	 * 
+	 * @param cn the node
+	 */
+	public void remove(CompNode cn) {
+		if (cn.getTransformStore() == this) {
+			cn.detachTransform();
+		}
+	}
+	
+	/**
+	 * @return the number of nodes in this store
+	 */
+	public int size() {
+		synchronized (lock) {
+			return (used);
+		}
+	}
+	
+	/**
+	 * Brings every world transform in this store up to date, in one pass
+	 * from parents to children.  Nodes are also resolved one at a time when
+	 * read, so calling this is never required, but it is much faster than
+	 * resolving many nodes separately.
+	 */
+	public void sweep() {
+		// Parents outside of the store are read without holding the lock
+		ArrayList<World> outs = new ArrayList<World>();
+		synchronized (lock) {
+			for (int i = 0; i < count; i++) {
+				if (live[i] && outer[i] != null) {
+					outs.add(outer[i]);
+				}
+			}
+		}
+		
+		for (World w : outs) {
+			w.node.readWorld(w);
+		}
+		
+		synchronized (lock) {
+			if (orderDirty) {
+				rebuildOrder();
+			}
+			
+			for (int k = 0; k < orderSize; k++) {
+				resolveOne(order[k]);
+			}
+		}
+	}
+	
+	int allocate(double x, double y, double z, double a) {
+		synchronized (lock) {
+			int id;
+			if (freeCount > 0) {
+				id = free[--freeCount];
+			} else {
+				if (count == lx.length) {
+					grow();
+				}
+				
+				id = count++;
+			}
+			
+			lx[id] = x;
+			ly[id] = y;
+			lz[id] = z;
+			la[id] = a;
+			wa[id] = 0;
+			wcos[id] = 1;
+			wsin[id] = 0;
+			parent[id] = NONE;
+			outer[id] = null;
+			version[id]++;
+			resolvedVersion[id] = version[id] - 1;
+			live[id] = true;
+			used++;
+			orderDirty = true;
+			return (id);
+		}
+	}
+	
+	/**
+	 * Frees a slot, copying its local transform into the array.
+	 */
+	void release(int id, double[] out) {
+		synchronized (lock) {
+			out[0] = lx[id];
+			out[1] = ly[id];
+			out[2] = lz[id];
+			out[3] = la[id];
+			
+			live[id] = false;
+			parent[id] = NONE;
+			outer[id] = null;
+			used--;
+			orderDirty = true;
+			
+			if (freeCount == free.length) {
+				free = Arrays.copyOf(free, freeCount * 2);
+			}
+			
+			free[freeCount++] = id;
+		}
+	}
+	
+	void setParent(int id, CompNode p) {
+		synchronized (lock) {
+			if (p == null) {
+				parent[id] = NONE;
+				outer[id] = null;
+			} else if (p.getTransformStore() == this) {
+				parent[id] = p.getTransformId();
+				outer[id] = null;
+			} else {
+				parent[id] = OUTER;
+				if (outer[id] == null || outer[id].node != p) {
+					outer[id] = new World(p);
+				}
+			}
+			
+			version[id]++;
+			orderDirty = true;
+		}
+	}
+	
+	void setX(int id, double x) {
+		synchronized (lock) {
+			lx[id] = x;
+			version[id]++;
+		}
+	}
+	
+	void setY(int id, double y) {
+		synchronized (lock) {
+			ly[id] = y;
+			version[id]++;
+		}
+	}
+	
+	void setZ(int id, double z) {
+		synchronized (lock) {
+			lz[id] = z;
+			version[id]++;
+		}
+	}
+	
+	void setAngle(int id, double a) {
+		synchronized (lock) {
+			la[id] = a;
+			version[id]++;
+		}
+	}
+	
+	void setPosition(int id, double x, double y) {
+		synchronized (lock) {
+			lx[id] = x;
+			ly[id] = y;
+			version[id]++;
+		}
+	}
+	
+	void setPosition(int id, double x, double y, double z) {
+		synchronized (lock) {
+			lx[id] = x;
+			ly[id] = y;
+			lz[id] = z;
+			version[id]++;
+		}
+	}
+	
+	void move(int id, double x, double y, double z) {
+		synchronized (lock) {
+			lx[id] += x;
+			ly[id] += y;
+			lz[id] += z;
+			version[id]++;
+		}
+	}
+	
+	/**
+	 * Brings one node's world transform up to date, along with
+	 * its parents in this store.
+	 */
+	void resolve(int id) {
+		World w;
+		synchronized (lock) {
+			int top = id;
+			while (parent[top] >= 0) {
+				top = parent[top];
+			}
+			
+			w = outer[top];
+		}
+		
+		if (w != null) {
+			w.node.readWorld(w);
+		}
+		
+		synchronized (lock) {
+			resolveUp(id);
+		}
+	}
+	
+	private void resolveUp(int i) {
+		if (parent[i] >= 0) {
+			resolveUp(parent[i]);
+		}
+		
+		resolveOne(i);
+	}
+	
+	private void resolveOne(int i) {
+		int p = parent[i];
+		if (p >= 0) {
+			derive(i, wx[p], wy[p], wz[p], wa[p], wcos[p], wsin[p], worldStamp[p]);
+		} else if (p == OUTER) {
+			World w = outer[i];
+			synchronized (w) {
+				derive(i, w.x, w.y, w.z, w.a, w.cos, w.sin, w.stamp);
+			}
+		} else {
+			derive(i, 0, 0, 0, 0, 1, 0, 0);
+		}
+	}
+	
+	private void derive(int i, double px, double py, double pz, double pa, double pcos, double psin, int pstamp) {
+		if (resolvedVersion[i] == version[i] && parentStamp[i] == pstamp) {
+			return;
+		}
+		
+		double x = lx[i];
+		double y = ly[i];
+		wx[i] = px + x * pcos - y * psin;
+		wy[i] = py + x * psin + y * pcos;
+		wz[i] = pz + lz[i];
+		
+		double a = pa + la[i];
+		if (a != wa[i]) {
+			wa[i] = a;
+			double r = Math.toRadians(a);
+			wcos[i] = Math.cos(r);
+			wsin[i] = Math.sin(r);
+		}
+		
+		parentStamp[i] = pstamp;
+		resolvedVersion[i] = version[i];
+		worldStamp[i]++;
+	}
+	
+	private void rebuildOrder() {
+		int max = 0;
+		for (int i = 0; i < count; i++) {
+			depth[i] = -1;
+		}
+		
+		for (int i = 0; i < count; i++) {
+			if (live[i]) {
+				max = Math.max(max, depthOf(i));
+			}
+		}
+		
+		// Counting sort by depth puts every parent before its children
+		int[] start = new int[max + 2];
+		for (int i = 0; i < count; i++) {
+			if (live[i]) {
+				start[depth[i] + 1]++;
+			}
+		}
+		
+		for (int d = 1; d < start.length; d++) {
+			start[d] += start[d - 1];
+		}
+		
+		for (int i = 0; i < count; i++) {
+			if (live[i]) {
+				order[start[depth[i]]++] = i;
+			}
+		}
+		
+		orderSize = used;
+		orderDirty = false;
+	}
+	
+	private int depthOf(int i) {
+		if (depth[i] < 0) {
+			int p = parent[i];
+			depth[i] = (p >= 0) ? depthOf(p) + 1 : 0;
+		}
+		
+		return (depth[i]);
+	}
+	
+	private void grow() {
+		int n = lx.length * 2;
+		lx = Arrays.copyOf(lx, n);
+		ly = Arrays.copyOf(ly, n);
+		lz = Arrays.copyOf(lz, n);
+		la = Arrays.copyOf(la, n);
+		wx = Arrays.copyOf(wx, n);
+		wy = Arrays.copyOf(wy, n);
+		wz = Arrays.copyOf(wz, n);
+		wa = Arrays.copyOf(wa, n);
+		wcos = Arrays.copyOf(wcos, n);
+		wsin = Arrays.copyOf(wsin, n);
+		worldStamp = Arrays.copyOf(worldStamp, n);
+		parent = Arrays.copyOf(parent, n);
+		outer = Arrays.copyOf(outer, n);
+		version = Arrays.copyOf(version, n);
+		resolvedVersion = Arrays.copyOf(resolvedVersion, n);
+		parentStamp = Arrays.copyOf(parentStamp, n);
+		live = Arrays.copyOf(live, n);
+		order = Arrays.copyOf(order, n);
+		depth = Arrays.copyOf(depth, n);
+	}
+	
+	/**
+	 * The last known world transform of a parent outside of the store.
+	 */
+	static class World {
+		final CompNode node;
+		double x, y, z, a;
+		double cos = 1, sin;
+		int stamp;
+		
+		private World(CompNode n) {
+			node = n;
+		}
+		
+		synchronized void set(double x, double y, double z, double a, double cos, double sin, int stamp) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.a = a;
+			this.cos = cos;
+			this.sin = sin;
+			this.stamp = stamp;
+		}
+	}
+}
@@ -6,14 +6,17 @@ import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphVector;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.lwjgl.opengl.GL11;
 
@@ -24,28 +27,46 @@ import de.jjco.resources.GLResource;
 /**
  * The OpenGL backend of the font.  This class loads each glyph into video memory for rendering
  * later.
+ * <p>
+ * Glyphs are drawn the first time they are used, for any code point the
+ * font can show, and packed into rows on one or more textures, called
+ * pages.  New glyphs are copied into their page on the rendering thread
+ * the next time the font draws.  Printable ASCII is drawn when the font
+ * loads.
  * 
  * @author Jared Jonas (bluesun212)
  * @version Revision 1
  */
 public class Font extends GLResource {
-	private static char[] chrs = new char[256];
-	static {
-		for (int i = 0; i < chrs.length; i++) {
-			chrs[i] = (char) i;
-		}
-	}
-	
-	private int width;
-	private int height;
+	private static final int PADDING = 1;
+
+	private int lineHeight;
+	private int pageSize;
 	private int ha = -1;
 	private int va = -1;
-	private int[][] coords;
-	private int id;
 
 	private java.awt.Font font;
 	private boolean antiAlias;
-	private ByteBuffer buffer;
+
+	// Glyph state, guarded by glyphLock
+	private final Object glyphLock = new Object();
+	private GlyphMap glyphs = new GlyphMap();
+	private ArrayList<Page> pages = new ArrayList<Page>();
+	private ArrayList<Glyph> pending = new ArrayList<Glyph>();
+	private FontRenderContext frc;
+	private BufferedImage scratch;
+	private ByteBuffer zeros;
+
+	private int layoutCacheSize = 64;
+	private volatile int generation;
+	private LinkedHashMap<String, TextLayout> layouts = new LinkedHashMap<String, TextLayout>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, TextLayout> e) {
+			return (size() > layoutCacheSize);
+		}
+	};
 
 	public static final int ALIGN_LEFT = -1;
 	public static final int ALIGN_CENTER = 0;
@@ -119,13 +140,27 @@ public class Font extends GLResource {
 	 * outside of the rendering thread.
 	 * 
 	 * @param font the AWT font
-	 * @param antiAlias if the font should be anti aliased 
+	 * @param antiAlias if the font should be anti aliased
 	 */
 	public Font(java.awt.Font font, boolean antiAlias) {
 		this.font = font;
 		this.antiAlias = antiAlias;
 	}
 
+	/**
+	 * @return the AWT font glyphs are drawn from
+	 */
+	public java.awt.Font getAWTFont() {
+		return ( font );
+	}
+
+	/**
+	 * @return whether glyphs are anti-aliased
+	 */
+	public boolean isAntiAliased() {
+		return ( antiAlias );
+	}
+
 	/**
 	 * Gets the width of the text rendered in this font.
 	 * 
@@ -133,16 +168,18 @@ public class Font extends GLResource {
 	 * @return the width of the text
 	 */
 	public int getWidth(String s) {
-		if (!isLoaded()) {
+		if (!isLoaded() || s == null) {
 			return ( 0 );
 		}
 
 		double w = 0;
+		double sc = getScale();
 
-		for (int i = 0; i < s.length(); i++) {
-			int c = s.charAt(i);
-			if(c <= 256) {
-				w += coords[c][6];
+		synchronized (glyphLock) {
+			for (int i = 0; i < s.length(); ) {
+				int c = s.codePointAt(i);
+				w += glyph(c).advance * sc;
+				i += Character.charCount(c);
 			}
 		}
 
@@ -155,7 +192,161 @@ public class Font extends GLResource {
 	 * @return the font height
 	 */
 	public int getHeight() {
-		return ( height / 16 );
+		return ( (int) Math.round(lineHeight * getScale()) );
+	}
+
+	/**
+	 * Gets how much glyphs are scaled by when drawn.  Plain fonts are
+	 * drawn at the size they were rasterized at.
+	 * 
+	 * @return the scale
+	 */
+	double getScale() {
+		return ( 1 );
+	}
+
+	/**
+	 * @return the SpriteBatch blend mode this font's text is drawn with
+	 */
+	int getBlendMode() {
+		return ( SpriteBatch.BLEND_ALPHA );
+	}
+
+	/**
+	 * Gets the ID of the first texture holding this font's glyphs.  Use
+	 * getPageTexture for glyphs on later pages.
+	 * 
+	 * @return the texture ID, or -1 if none has been created yet
+	 */
+	public int getTextureID() {
+		return ( getPageTexture(0) );
+	}
+
+	/**
+	 * Gets the ID of a texture holding this font's glyphs.
+	 * 
+	 * @param page the page
+	 * @return the texture ID, or -1 if it has not been created yet
+	 */
+	public int getPageTexture(int page) {
+		synchronized (glyphLock) {
+			return ( (page < pages.size()) ? pages.get(page).textureID : -1 );
+		}
+	}
+
+	/**
+	 * Gets how much video memory this font's pages take up, counting
+	 * pages whose textures have not been created yet.
+	 * 
+	 * @return the size of the pages in bytes
+	 */
+	long getTextureBytes() {
+		synchronized (glyphLock) {
+			return ( pages.size() * (long) pageSize * pageSize * 4 );
+		}
+	}
+
+	/**
+	 * @return the number of glyphs drawn so far
+	 */
+	public int getGlyphCount() {
+		synchronized (glyphLock) {
+			return ( glyphs.size() );
+		}
+	}
+
+	/**
+	 * Gets the text laid out in this font.  The most recently used
+	 * layouts are cached, so asking for the same text again is cheap.
+	 * 
+	 * @param s the text
+	 * @return the layout, or null if the font has not loaded
+	 */
+	public TextLayout getLayout(String s) {
+		if (!isLoaded() || s == null) {
+			return ( null );
+		}
+
+		synchronized (layouts) {
+			TextLayout l = layouts.get(s);
+			if (l == null) {
+				l = layout(s);
+				layouts.put(s, l);
+			}
+
+			return ( l );
+		}
+	}
+
+	/**
+	 * Sets how many layouts this font keeps cached.
+	 * 
+	 * @param n the number of layouts
+	 * @see #getLayout(String)
+	 */
+	public void setLayoutCacheSize(int n) {
+		synchronized (layouts) {
+			layoutCacheSize = n;
+
+			while (layouts.size() > n) {
+				layouts.remove(layouts.keySet().iterator().next());
+			}
+		}
+	}
+
+	/**
+	 * Drops every cached layout, for when the way text is laid out changes.
+	 * Layouts already handed out become stale.
+	 */
+	void clearLayouts() {
+		synchronized (layouts) {
+			layouts.clear();
+			generation++;
+		}
+	}
+
+	/**
+	 * Counts how many times the layouts have been dropped.  Read while
+	 * holding the layouts lock when making a layout.
+	 */
+	int getGeneration() {
+		return ( generation );
+	}
+
+	private TextLayout layout(String s) {
+		float[] g = new float[s.length() * 8];
+		int[] gp = new int[s.length()];
+		int n = 0;
+		double pos = 0;
+		double sc = getScale();
+
+		synchronized (glyphLock) {
+			for ( int i = 0; i < s.length(); ) {
+				int c = s.codePointAt(i);
+				i += Character.charCount(c);
+
+				Glyph gl = glyph(c);
+				if (gl.page != -1) {
+					double x1 = pos + gl.xo * sc;
+					double y1 = gl.yo * sc;
+
+					g[n * 8] = (float) x1;
+					g[n * 8 + 1] = (float) y1;
+					g[n * 8 + 2] = (float) (x1 + gl.w * sc);
+					g[n * 8 + 3] = (float) (y1 + gl.h * sc);
+					g[n * 8 + 4] = (float) (gl.x / (double) pageSize);
+					g[n * 8 + 5] = (float) (gl.y / (double) pageSize);
+					g[n * 8 + 6] = (float) ((gl.x + gl.w) / (double) pageSize);
+					g[n * 8 + 7] = (float) ((gl.y + gl.h) / (double) pageSize);
+					gp[n] = gl.page;
+					n++;
+				}
+
+				pos += gl.advance * sc;
+			}
+		}
+
+		return ( new TextLayout(this, s, (int) pos, getHeight(), g, gp, n) );
 	}
 
 	/**
@@ -165,146 +356,316 @@ public class Font extends GLResource {
 	 * @param y the y coordinate
 	 * @param s the text
 	 */
-	public void drawString(float x, float y, String s) { // TODO update to use new openGL
-		if (!isLoaded() || s == null) {
-			return;
+	public void drawString(float x, float y, String s) {
+		TextLayout l = getLayout(s);
+		if (l != null) {
+			l.draw(x, y, ha, va);
+		}
+	}
+
+	/**
+	 * Gets a glyph, drawing and packing it if this is its first use.
+	 * Must be called while holding glyphLock.
+	 */
+	private Glyph glyph(int cp) {
+		Glyph g = glyphs.get(cp);
+		if (g == null) {
+			g = rasterize(cp);
+			glyphs.put(cp, g);
+
+			if (g.pixels != null) {
+				place(g);
+			}
+
+			if (g.pixels != null) {
+				pending.add(g);
+			}
 		}
 
-		int w = getWidth(s);
-		int h = getHeight();
-		y += h;
-		x -= w * (ha + 1) / 2;
-		y -= h * (va + 1) / 2;
+		return ( g );
+	}
 
-		GL11.glPushMatrix();
-		GL11.glTranslated(x, y, 0);
-		GL11.glEnable(GL11.GL_TEXTURE_2D);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, id);
-		GL11.glBegin(GL11.GL_QUADS);
+	/**
+	 * Draws a single glyph into RGBA pixels.  Glyphs with nothing to
+	 * draw, like spaces, are returned without pixels.
+	 * 
+	 * @param cp the code point
+	 * @return the glyph
+	 */
+	Glyph rasterize(int cp) {
+		String s = new String(Character.toChars(cp));
+		GlyphVector gv = font.createGlyphVector(frc, s);
+		Rectangle bounds = gv.getGlyphPixelBounds(0, frc, 0, 0);
+
+		Glyph g = new Glyph();
+		g.advance = gv.getGlyphMetrics(0).getAdvance();
+		g.w = bounds.width;
+		g.h = bounds.height;
+		g.xo = bounds.x;
+		g.yo = bounds.y;
+
+		if (g.w <= 0 || g.h <= 0) {
+			g.w = 0;
+			g.h = 0;
+			return ( g );
+		}
 
-		double pos = 0;
-		for ( int i = 0; i < s.length(); i++ ) {
-			int c = s.charAt(i);
-			if (c < 256) {
-				double u1 = coords[c][0] / (double)width;
-				double v1 = coords[c][1] / (double)height;
-				double u2 = (coords[c][0] + coords[c][2]) / (double)width;
-				double v2 = (coords[c][1] + coords[c][3]) / (double)height;
-				double x1 = pos + coords[c][4];
-				double y1 = coords[c][5];
-				double x2 = x1 + coords[c][2];
-				double y2 = y1 + coords[c][3];
-
-				GL11.glTexCoord2d(u1, v1);
-				GL11.glVertex2d(x1, y1);
-				GL11.glTexCoord2d(u2, v1);
-				GL11.glVertex2d(x2, y1);
-				GL11.glTexCoord2d(u2, v2);
-				GL11.glVertex2d(x2, y2);
-				GL11.glTexCoord2d(u1, v2);
-				GL11.glVertex2d(x1, y2);
-				pos += coords[c][6];
+		int[] data = draw(s, g.w, g.h, -g.xo, -g.yo);
+		ByteBuffer buf = ByteBuffer.allocateDirect(g.w * g.h * 4);
+		for (int y = 0; y < g.h; y++) {
+			for (int x = 0; x < g.w; x++) {
+				int p = data[y * scratch.getWidth() + x];
+				buf.put((byte) ((p >> 16) & 0xff));
+				buf.put((byte) ((p >> 8) & 0xff));
+				buf.put((byte) (p & 0xff));
+				buf.put((byte) ((p >> 24) & 0xff));
 			}
 		}
 
-		GL11.glEnd();
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
-		GL11.glDisable(GL11.GL_TEXTURE_2D);
-		GL11.glPopMatrix();
+		buf.rewind();
+		g.pixels = buf;
+		return ( g );
 	}
 
-	@Override
-	protected void doLoad() {
-		// First, create a temporary buffered image to get the font metrics
-		BufferedImage bi = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D temp = (Graphics2D) bi.getGraphics();
-		temp.setFont(font);
+	/**
+	 * Draws a string in white onto the scratch image, growing it if
+	 * needed, and returns its pixels.  Rows are the scratch image's
+	 * width apart.  Must be called while holding glyphLock.
+	 */
+	int[] draw(String s, int w, int h, int ox, int oy) {
+		if (scratch == null || scratch.getWidth() < w || scratch.getHeight() < h) {
+			int sw = Math.max(w, (scratch == null) ? 64 : scratch.getWidth());
+			int sh = Math.max(h, (scratch == null) ? 64 : scratch.getHeight());
+			scratch = new BufferedImage(sw, sh, BufferedImage.TYPE_INT_ARGB);
+		}
 
-		FontMetrics metrics = temp.getFontMetrics();
-		width = metrics.getMaxAdvance() * 16;
-		height = metrics.getHeight() * 16;
-		temp.dispose();
+		int[] data = ((DataBufferInt) scratch.getRaster().getDataBuffer()).getData();
+		Arrays.fill(data, 0);
 
-		// Create font image
-		BufferedImage page = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D gfx = (Graphics2D) page.getGraphics();
+		Graphics2D gfx = scratch.createGraphics();
 		gfx.setColor(Color.WHITE);
 		gfx.setFont(font);
-
 		if (antiAlias) {
 			gfx.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			gfx.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 		}
 
-		// Draw texture
-		coords = new int[256][];
-
-		GlyphVector glyphs = font.createGlyphVector(gfx.getFontRenderContext(), chrs);
-		int cmh = 0;
-		int cx = 0;
-		int cy = 0;
-
-		for (int i = 0; i < chrs.length; i++) {
-			// Calculate bounds
-			Rectangle bounds = glyphs.getGlyphPixelBounds(i, null, 0, 0);
-			Point2D origin = glyphs.getGlyphPosition(i);
-			bounds.translate(-(int)origin.getX(), -(int)origin.getY());
-
-			int cw = (int) bounds.getWidth();
-			int ch = (int) bounds.getHeight();
-			int cxo = (int) bounds.getX();
-			int cyo = (int) bounds.getY();
-			int lcw = (int) gfx.getFontMetrics().getStringBounds("" + chrs[i], gfx).getWidth();
-			if (ch > cmh) {
-				cmh = ch;
+		gfx.drawString(s, ox, oy);
+		gfx.dispose();
+		return ( data );
+	}
+
+	/**
+	 * Finds room for a glyph on a page, starting a new page if none
+	 * has any.  Must be called while holding glyphLock.
+	 */
+	private void place(Glyph g) {
+		for (int i = 0; i < pages.size(); i++) {
+			if (pages.get(i).insert(g, pageSize)) {
+				g.page = i;
+				return;
 			}
+		}
 
-			coords[i] = new int[]{cx, cy, cw, ch, cxo, cyo, lcw};
+		Page p = new Page();
+		if (p.insert(g, pageSize)) {
+			pages.add(p);
+			g.page = pages.size() - 1;
+		} else {
+			EngineLog.logException("Glyph " + g.w + "x" + g.h + " is too large for " + font.getFontName());
+			g.pixels = null;
+		}
+	}
 
-			// Draw
-			AffineTransform id = gfx.getTransform();
-			gfx.translate(cx-cxo, cy-cyo);
-			gfx.drawString("" + chrs[i], 0, 0);
-			gfx.setTransform(id);
+	/**
+	 * Copies glyphs drawn since the last call into their pages, creating
+	 * pages as needed.  This must be called on the rendering thread, and
+	 * is called whenever this font's text is drawn.
+	 */
+	public void uploadGlyphs() {
+		synchronized (glyphLock) {
+			if (pending.isEmpty()) {
+				return;
+			}
 
-			// Move
-			cx += cw + 2;
-			if (i != 0 && i % 16 == 0) {
-				cx = 0;
-				cy += cmh + 2;
-				cmh = 0;
+			for (Glyph g : pending) {
+				Page p = pages.get(g.page);
+				if (p.textureID == -1) {
+					p.textureID = GL11.glGenTextures();
+					GL11.glBindTexture(GL11.GL_TEXTURE_2D, p.textureID);
+					GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, pageSize, pageSize, 0,
+							GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+					GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+					GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+					EngineLog.log("Created page " + g.page + " of " + font.getFontName() + ":" + lineHeight + " in ID " + p.textureID);
+				} else {
+					GL11.glBindTexture(GL11.GL_TEXTURE_2D, p.textureID);
+				}
+
+				GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, g.x, g.y, g.w, g.h,
+						GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, g.pixels);
+				clearGutter(g);
+				g.pixels = null;
 			}
+
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+			pending.clear();
 		}
+	}
 
-		// Finally, make the image into an openGL compatible texture
-		int[] data = ((DataBufferInt) page.getRaster().getDataBuffer()).getData();
-		buffer = ByteBuffer.allocateDirect(width * height * 4);
+	/**
+	 * Clears the padding right of and below a glyph.  Pages are created
+	 * without clearing them, and filtering samples the texels just
+	 * outside each glyph.  Must be called while holding glyphLock, with
+	 * the glyph's page bound.
+	 */
+	private void clearGutter(Glyph g) {
+		int right = Math.min(PADDING, pageSize - g.x - g.w);
+		int below = Math.min(PADDING, pageSize - g.y - g.h);
 
-		for ( int i = 0; i < data.length; i++ ) {
-			buffer.put((byte) ((data[i] >> 16) & 0xff));
-			buffer.put((byte) ((data[i] >> 8) & 0xff));
-			buffer.put((byte) (data[i] & 0xff));
-			buffer.put((byte) ((data[i] >> 24) & 0xff));
+		if (zeros == null) {
+			zeros = ByteBuffer.allocateDirect(pageSize * PADDING * 4);
 		}
 
-		gfx.dispose();
-		buffer.rewind();
+		if (right > 0) {
+			GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, g.x + g.w, g.y, right, Math.min(g.h + PADDING, pageSize - g.y),
+					GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, zeros);
+		}
+
+		if (below > 0) {
+			GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, g.x, g.y + g.h, g.w, below,
+					GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, zeros);
+		}
+	}
+
+	/**
+	 * Sets up the metrics glyphs are drawn with.  Called when loading,
+	 * before any glyph is drawn.
+	 * 
+	 * @return the line height in pixels
+	 */
+	int prepare() {
+		BufferedImage bi = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D temp = (Graphics2D) bi.getGraphics();
+		temp.setFont(font);
+		if (antiAlias) {
+			temp.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			temp.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		}
+
+		FontMetrics metrics = temp.getFontMetrics();
+		frc = temp.getFontRenderContext();
+		temp.dispose();
+		return ( metrics.getHeight() );
+	}
+
+	@Override
+	protected void doLoad() {
+		synchronized (glyphLock) {
+			lineHeight = prepare();
+
+			// Room for a few hundred glyphs per page
+			pageSize = 256;
+			while (pageSize < 2048 && pageSize < lineHeight * 16) {
+				pageSize <<= 1;
+			}
+
+			for (int c = 32; c < 127; c++) {
+				glyph(c);
+			}
+		}
 	}
 
 	@Override
 	protected void doLoadWithGL() {
-		id = GL11.glGenTextures();
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, id);
-		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, width, height, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, buffer);
-		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
-		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
-		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
-		EngineLog.log("Loaded " + font.getFontName() + ":" + height + " into ID " + id);
+		uploadGlyphs();
+		EngineLog.log("Loaded " + font.getFontName() + ":" + lineHeight + " into ID " + getTextureID());
 	}
 
 	@Override
 	protected void doDestroyWithGL() {
-		GL11.glDeleteTextures(id);
+		synchronized (glyphLock) {
+			for (Page p : pages) {
+				if (p.textureID != -1) {
+					GL11.glDeleteTextures(p.textureID);
+				}
+			}
+
+			pages.clear();
+			pending.clear();
+			glyphs.clear();
+			scratch = null;
+			zeros = null;
+		}
+
+		clearLayouts();
 	}
 
 	protected void doDestroy() {}
-}
\ No newline at end of file
+
+	/**
+	 * Where a glyph is drawn from and how it sits on the line.
+	 */
+	static class Glyph {
+		int page = -1;
+		int x;
+		int y;
+		int w;
+		int h;
+		int xo;
+		int yo;
+		float advance;
+
+		// Waiting to be uploaded
+		ByteBuffer pixels;
+	}
+
+	/**
+	 * One texture of glyphs, packed in shelves: rows as tall as the
+	 * first glyph placed in them, filled left to right.
+	 */
+	private static class Page {
+		private int textureID = -1;
+		private int[] shelfY = new int[8];
+		private int[] shelfH = new int[8];
+		private int[] shelfX = new int[8];
+		private int shelves;
+		private int top;
+
+		private boolean insert(Glyph g, int size) {
+			int w = g.w + PADDING;
+			int h = g.h + PADDING;
+
+			// The shortest shelf the glyph fits on
+			int best = -1;
+			for (int i = 0; i < shelves; i++) {
+				if (h <= shelfH[i] && shelfX[i] + w <= size && (best == -1 || shelfH[i] < shelfH[best])) {
+					best = i;
+				}
+			}
+
+			if (best == -1) {
+				if (top + h > size || w > size) {
+					return ( false );
+				}
+
+				if (shelves == shelfY.length) {
+					shelfY = Arrays.copyOf(shelfY, shelves * 2);
+					shelfH = Arrays.copyOf(shelfH, shelves * 2);
+					shelfX = Arrays.copyOf(shelfX, shelves * 2);
+				}
+
+				best = shelves++;
+				shelfY[best] = top;
+				shelfH[best] = h;
+				shelfX[best] = 0;
+				top += h;
+			}
+
+			g.x = shelfX[best];
+			g.y = shelfY[best];
+			shelfX[best] += w;
+			return ( true );
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package de.jjco.graphics;
+
+/**
+ * The texture coordinates of every frame of a Sprite, worked out once
+ * when its texture has loaded.  Looking up a frame is a couple of array
+ * reads, no matter how long the sheet is.  A table never changes once
+ * built, so it is shared by everything drawing the same Sprite and can
+ * be read from any thread.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see Sprite#getFrameTable()
+ */
+public final class FrameTable {
+	private final int count;
+	private final int width;
+	private final int height;
+	private final int[] pos;
+	private final float[] uv;
+	
+	/**
+	 * Builds the table by walking the sheet left to right, then top to
+	 * bottom, the way frames have always been laid out.
+	 * 
+	 * @param tex the loaded texture
+	 * @param fs the number of frames, or -1 for as many as fit
+	 */
+	FrameTable(Texture tex, int fs, int w, int h, int sx, int sy, int hsep, int vsep) {
+		int tw = tex.getWidth();
+		int th = tex.getHeight();
+		
+		if (fs < 0) {
+			int cols = 1;
+			if (tw - sx - w >= 0) {
+				cols += (tw - sx - w) / (w + hsep);
+			}
+			
+			int rows = 1;
+			if (th - sy - h >= 0) {
+				rows += (th - sy - h) / (h + vsep);
+			}
+			
+			fs = cols * rows;
+		}
+		
+		count = Math.max(fs, 1);
+		width = w;
+		height = h;
+		pos = new int[count * 2];
+		uv = new float[count * 4];
+		
+		double pw = tex.getTextureWidth();
+		double ph = tex.getTextureHeight();
+		int fx = sx;
+		int fy = sy;
+		
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				fx += w + hsep;
+				if (fx + w > tw) {
+					fx = sx;
+					fy += h + vsep;
+				}
+			}
+			
+			pos[i * 2] = fx;
+			pos[i * 2 + 1] = fy;
+			uv[i * 4] = (float) ((tex.getOffsetX() + fx) / pw);
+			uv[i * 4 + 1] = (float) ((tex.getOffsetY() + fy) / ph);
+			uv[i * 4 + 2] = (float) ((tex.getOffsetX() + fx + w) / pw);
+			uv[i * 4 + 3] = (float) ((tex.getOffsetY() + fy + h) / ph);
+		}
+	}
+	
+	/**
+	 * @return the number of frames
+	 */
+	public int size() {
+		return (count);
+	}
+	
+	/**
+	 * @return the width of each frame
+	 */
+	public int getWidth() {
+		return (width);
+	}
+	
+	/**
+	 * @return the height of each frame
+	 */
+	public int getHeight() {
+		return (height);
+	}
+	
+	/**
+	 * Gets the frame actually drawn for a frame number.  Frames past the
+	 * end draw the last frame, and frames before the start draw the first.
+	 * 
+	 * @param frame the frame number
+	 * @return the index into the table
+	 */
+	public int clamp(int frame) {
+		return ((frame < 0) ? 0 : (frame >= count) ? count - 1 : frame);
+	}
+	
+	/**
+	 * Gets the x coordinate of a frame in the Sprite's texture.
+	 * 
+	 * @param i the frame
+	 * @return the left edge in pixels
+	 */
+	public int getX(int i) {
+		return (pos[i * 2]);
+	}
+	
+	/**
+	 * Gets the y coordinate of a frame in the Sprite's texture.
+	 * 
+	 * @param i the frame
+	 * @return the top edge in pixels
+	 */
+	public int getY(int i) {
+		return (pos[i * 2 + 1]);
+	}
+	
+	/**
+	 * @param i the frame
+	 * @return the left texture coordinate
+	 */
+	public float getU1(int i) {
+		return (uv[i * 4]);
+	}
+	
+	/**
+	 * @param i the frame
+	 * @return the top texture coordinate
+	 */
+	public float getV1(int i) {
+		return (uv[i * 4 + 1]);
+	}
+	
+	/**
+	 * @param i the frame
+	 * @return the right texture coordinate
+	 */
+	public float getU2(int i) {
+		return (uv[i * 4 + 2]);
+	}
+	
+	/**
+	 * @param i the frame
+	 * @return the bottom texture coordinate
+	 */
+	public float getV2(int i) {
+		return (uv[i * 4 + 3]);
+	}
+}
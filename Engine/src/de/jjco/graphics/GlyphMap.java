@@ -0,0 +1,89 @@
+package de.jjco.graphics;
+
+/**
+ * Maps code points to their glyphs without boxing the code points.
+ * This is an open-addressed table that grows when half full.  It is
+ * not thread safe; Font only touches it while holding its glyph lock.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see Font
+ */
+class GlyphMap {
+	private int[] keys = new int[256];
+	private Font.Glyph[] values = new Font.Glyph[256];
+	private int size;
+	
+	/**
+	 * Gets the glyph for a code point.
+	 * 
+	 * @param cp the code point
+	 * @return the glyph, or null
+	 */
+	Font.Glyph get(int cp) {
+		int mask = keys.length - 1;
+		for (int i = hash(cp) & mask; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == cp) {
+				return (values[i]);
+			}
+		}
+		
+		return (null);
+	}
+	
+	/**
+	 * Adds the glyph for a code point, which must not already have one.
+	 * 
+	 * @param cp the code point
+	 * @param g the glyph
+	 */
+	void put(int cp, Font.Glyph g) {
+		if (size * 2 >= keys.length) {
+			int[] oldKeys = keys;
+			Font.Glyph[] oldValues = values;
+			keys = new int[oldKeys.length * 2];
+			values = new Font.Glyph[oldKeys.length * 2];
+			
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldValues[i] != null) {
+					insert(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+		
+		insert(cp, g);
+		size++;
+	}
+	
+	private void insert(int cp, Font.Glyph g) {
+		int mask = keys.length - 1;
+		int i = hash(cp) & mask;
+		while (values[i] != null) {
+			i = (i + 1) & mask;
+		}
+		
+		keys[i] = cp;
+		values[i] = g;
+	}
+	
+	/**
+	 * Removes every glyph.
+	 */
+	void clear() {
+		keys = new int[256];
+		values = new Font.Glyph[256];
+		size = 0;
+	}
+	
+	/**
+	 * @return the number of glyphs
+	 */
+	int size() {
+		return (size);
+	}
+	
+	private static int hash(int cp) {
+		cp *= 0x9E3779B9;
+		return (cp ^ (cp >>> 16));
+	}
+}
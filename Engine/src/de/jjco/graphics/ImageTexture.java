@@ -22,6 +22,9 @@ import de.jjco.resources.FileSystem;
  * @version Revision 1
  */
 public class ImageTexture extends Texture {
+	// The most pixel data copied to OpenGL at once when loading in the background
+	private static final int UPLOAD_CHUNK = 1 << 18;
+	
 	private String resource;
 	private BufferedImage img;
 	
@@ -29,6 +32,9 @@ public class ImageTexture extends Texture {
 	private ByteBuffer buffer;
 	private int comps;
 	
+	// The rows copied to OpenGL so far, or -1 if the texture does not exist yet
+	private int uploadedRows = -1;
+	
 	/**
 	 * This creates a new deferred texture object.  This is called from the TextureLoader
 	 * class.
@@ -66,13 +72,20 @@ public class ImageTexture extends Texture {
 	@Override
 	protected void doDestroyWithGL() {
 		EngineLog.log("Destroying " + this);
-		if ( isLoaded() ) {
+		if ( isLoaded() || uploadedRows != -1 ) {
 			GL11.glDeleteTextures(getID());
+			uploadedRows = -1;
 		}
 	}
 
 	@Override
 	protected void doLoadWithGL() {
+		if (uploadedRows != -1) {
+			// Finish a texture that was partly loaded in the background
+			while (!doLoadWithGLPart());
+			return;
+		}
+		
 		int format = comps == 4 ? GL11.GL_RGBA : GL11.GL_RGB;
 		textureID = GL11.glGenTextures();
 		
@@ -84,6 +97,42 @@ public class ImageTexture extends Texture {
 		
 		EngineLog.log("Loaded " + resource + " into texture id " + textureID);
 	}
+	
+	/**
+	 * Creates the texture empty, then copies the image into it a band of
+	 * rows at a time, so large images do not stall a frame.
+	 */
+	@Override
+	protected boolean doLoadWithGLPart() {
+		int format = comps == 4 ? GL11.GL_RGBA : GL11.GL_RGB;
+		if (uploadedRows == -1) {
+			textureID = GL11.glGenTextures();
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
+			GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, comps, width, height, 0, format, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+			uploadedRows = 0;
+		} else {
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
+		}
+		
+		int rowBytes = width * comps;
+		int rows = Math.min(height - uploadedRows, Math.max(1, UPLOAD_CHUNK / Math.max(1, rowBytes)));
+		
+		ByteBuffer band = buffer.duplicate();
+		band.position(uploadedRows * rowBytes);
+		GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, uploadedRows, width, rows, format, GL11.GL_UNSIGNED_BYTE, band);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+		uploadedRows += rows;
+		
+		if (uploadedRows < height) {
+			return (false);
+		}
+		
+		uploadedRows = -1;
+		EngineLog.log("Loaded " + resource + " into texture id " + textureID);
+		return (true);
+	}
 
 	@Override
 	protected void doLoad() {
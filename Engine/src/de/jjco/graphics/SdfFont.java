@@ -0,0 +1,235 @@
+package de.jjco.graphics;
+
+import java.awt.FontFormatException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import de.jjco.resources.FileSystem;
+
+/**
+ * A font whose glyphs are stored as signed distance fields instead of
+ * coverage.  Each glyph is rasterized once, at a fixed size, and every
+ * texel holds how far it is from the glyph's edge.  Drawn with an alpha
+ * test at the edge, the glyphs stay sharp when scaled up or down, so a
+ * single SdfFont can draw a face at any size from the same textures.
+ * <p>
+ * Changing the size with setSize does not rasterize anything again; it
+ * only makes layouts of the font stale, so TextNodes lay their text out
+ * again at the new size.  Text from an SdfFont is drawn with
+ * SpriteBatch.BLEND_DISTANCE_FIELD when batched.
+ * <p>
+ * Run from the command line, this compares the texture memory and load
+ * time of one SdfFont against a Font for each size it replaces:
+ * <pre>java de.jjco.graphics.SdfFont [font name] [size...]</pre>
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ */
+public class SdfFont extends Font {
+	/**
+	 * The point size glyphs are rasterized at.
+	 */
+	public static final int RASTER_SIZE = 48;
+	
+	/**
+	 * How far from the edge, in texels, distances are stored.
+	 */
+	public static final int SPREAD = 6;
+	
+	private volatile float size;
+	
+	/**
+	 * Creates a distance field font based on a pre-existing font.
+	 * 
+	 * @param name font name
+	 * @param size point size text is drawn at
+	 * @return the SdfFont object
+	 */
+	public static SdfFont createSystemFont(String name, float size) {
+		java.awt.Font f = new java.awt.Font(name, 0, RASTER_SIZE);
+		return (new SdfFont(f, size));
+	}
+	
+	/**
+	 * Creates a distance field font based on a TrueType resource.
+	 * 
+	 * @param resource the resource
+	 * @param size point size text is drawn at
+	 * @return the SdfFont object, or null if it could not be read
+	 */
+	public static SdfFont loadFont(String resource, float size) {
+		InputStream is = FileSystem.getInputStream(resource);
+		
+		try {
+			java.awt.Font f = java.awt.Font.createFont(java.awt.Font.TRUETYPE_FONT, is);
+			return (new SdfFont(f, size));
+		} catch (FontFormatException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return (null);
+	}
+	
+	/**
+	 * Creates a distance field font.  The face's own size is ignored.
+	 * 
+	 * @param face the AWT font
+	 * @param size point size text is drawn at
+	 */
+	public SdfFont(java.awt.Font face, float size) {
+		super(face.deriveFont((float) RASTER_SIZE), true);
+		this.size = size;
+	}
+	
+	/**
+	 * @return the point size text is drawn at
+	 */
+	public float getSize() {
+		return (size);
+	}
+	
+	/**
+	 * Sets the point size text is drawn at.  This is cheap, as the
+	 * glyphs are not rasterized again.
+	 * 
+	 * @param s the size
+	 */
+	public void setSize(float s) {
+		if (s != size) {
+			size = s;
+			clearLayouts();
+		}
+	}
+	
+	@Override
+	double getScale() {
+		return (size / RASTER_SIZE);
+	}
+	
+	@Override
+	int getBlendMode() {
+		return (SpriteBatch.BLEND_DISTANCE_FIELD);
+	}
+	
+	/**
+	 * Rasterizes the glyph as usual, then replaces its coverage with the
+	 * distance to its edge.  The glyph grows by SPREAD on every side to
+	 * make room for the field outside it.
+	 */
+	@Override
+	Glyph rasterize(int cp) {
+		Glyph g = super.rasterize(cp);
+		if (g.pixels == null) {
+			return (g);
+		}
+		
+		int w = g.w + SPREAD * 2;
+		int h = g.h + SPREAD * 2;
+		boolean[] inside = new boolean[w * h];
+		for (int y = 0; y < g.h; y++) {
+			for (int x = 0; x < g.w; x++) {
+				int a = g.pixels.get((y * g.w + x) * 4 + 3) & 0xff;
+				inside[(y + SPREAD) * w + x + SPREAD] = a >= 128;
+			}
+		}
+		
+		ByteBuffer buf = ByteBuffer.allocateDirect(w * h * 4);
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				boolean in = inside[y * w + x];
+				float d = (float) Math.sqrt(nearest(inside, w, h, x, y, !in)) - 0.5f;
+				if (!in) {
+					d = -d;
+				}
+				
+				float a = Math.max(0, Math.min(1, 0.5f + d / (SPREAD * 2)));
+				buf.put((byte) 255).put((byte) 255).put((byte) 255).put((byte) (a * 255 + 0.5f));
+			}
+		}
+		
+		buf.rewind();
+		g.pixels = buf;
+		g.w = w;
+		g.h = h;
+		g.xo -= SPREAD;
+		g.yo -= SPREAD;
+		return (g);
+	}
+	
+	/**
+	 * Gets the squared distance to the nearest texel that is or is not
+	 * inside the glyph, searching no further than SPREAD.
+	 */
+	private static int nearest(boolean[] inside, int w, int h, int x, int y, boolean want) {
+		int best = (SPREAD + 1) * (SPREAD + 1);
+		int y1 = Math.max(0, y - SPREAD);
+		int y2 = Math.min(h - 1, y + SPREAD);
+		int x1 = Math.max(0, x - SPREAD);
+		int x2 = Math.min(w - 1, x + SPREAD);
+		
+		for (int j = y1; j <= y2; j++) {
+			int dy = (j - y) * (j - y);
+			if (dy >= best) {
+				continue;
+			}
+			
+			for (int i = x1; i <= x2; i++) {
+				int d = dy + (i - x) * (i - x);
+				if (d < best && inside[j * w + i] == want) {
+					best = d;
+				}
+			}
+		}
+		
+		return (best);
+	}
+	
+	/**
+	 * Compares one SdfFont with a Font for each size, printing how much
+	 * texture memory each needs for printable ASCII and how long it took
+	 * to rasterize.  Uploading to OpenGL is not timed, as it needs a
+	 * Window; the bytes printed are what would be uploaded.
+	 * 
+	 * @param args the font name, then the sizes, which default to 8 to 72
+	 */
+	public static void main(String[] args) {
+		String name = (args.length > 0) ? args[0] : "SansSerif";
+		int[] sizes;
+		if (args.length > 1) {
+			sizes = new int[args.length - 1];
+			for (int i = 0; i < sizes.length; i++) {
+				sizes[i] = Integer.parseInt(args[i + 1]);
+			}
+		} else {
+			sizes = new int[] {8, 10, 12, 14, 16, 18, 20, 24, 28, 32, 40, 48, 56, 64, 72};
+		}
+		
+		// Warm up AWT's font code so the first font is not charged for it
+		createSystemFont(name, 16).doLoad();
+		
+		long bytes = 0;
+		long nanos = 0;
+		for (int s : sizes) {
+			Font f = Font.createSystemFont(name, s, true);
+			long t = System.nanoTime();
+			f.doLoad();
+			nanos += System.nanoTime() - t;
+			bytes += f.getTextureBytes();
+			f.destroy();
+		}
+		
+		SdfFont sdf = createSystemFont(name, sizes[0]);
+		long t = System.nanoTime();
+		sdf.doLoad();
+		long sdfNanos = System.nanoTime() - t;
+		long sdfBytes = sdf.getTextureBytes();
+		sdf.destroy();
+		
+		System.out.println(name + ", printable ASCII");
+		System.out.println("Font at " + sizes.length + " sizes: " + (bytes / 1024) + " KB of textures, " + (nanos / 1000000) + " ms");
+		System.out.println("One SdfFont:       " + (sdfBytes / 1024) + " KB of textures, " + (sdfNanos / 1000000) + " ms");
+	}
+}
@@ -2,11 +2,14 @@ package de.jjco.graphics;
 
 import org.lwjgl.opengl.GL11;
 
+import de.jjco.Color;
+
 
 /**
  * The Sprite class is the way to load images into memory.  You first
  * create a sprite reference by calling loadImage or loadSheet to
- * load the actual image into it.
+ * load the actual image into it.  The texture can be a region of a
+ * TextureAtlas, so that many sprites share one OpenGL texture.
  * 
  * @author Jared Jonas (bluesun212)
  * @version Revision 1
@@ -21,7 +24,8 @@ public class Sprite {
 	private int sy;
 	private int horSep;
 	private int vertSep;
-	
+	private volatile FrameTable table;
+
 	private Sprite() {
 		
 	}
@@ -36,8 +40,10 @@ public class Sprite {
 	public static Sprite loadImage(Texture tex) {
 		Sprite s = new Sprite();
 		s.sprite = tex;
+		s.frames = 1;
 		s.width = tex.getWidth();
 		s.height = tex.getHeight();
+		s.getFrameTable();
 		
 		return ( s );
 	}
@@ -59,22 +65,54 @@ public class Sprite {
 	public static Sprite loadSheet(Texture tex, int fs, int w, int h, int x, int y, int hsep, int vsep) {
 		Sprite s = new Sprite();
 		s.sprite = tex;
-		s.frames = fs == -1 ? Integer.MAX_VALUE : fs;
+		s.frames = fs;
 		s.width = w;
 		s.height = h;
 		s.sx = x;
 		s.sy = y;
 		s.horSep = hsep;
 		s.vertSep = vsep;
+		s.getFrameTable();
 		
 		return ( s );
 	}
 	
 	/**
+	 * Gets the number of frames in this sprite.  For sheets that work
+	 * out the number of frames automatically, this is Integer.MAX_VALUE
+	 * until the texture has loaded.
+	 * 
 	 * @return the number of frames in this sprite
 	 */
 	public int getNumFrames() {
-		return ( frames );
+		FrameTable t = getFrameTable();
+		if ( t != null ) {
+			return ( t.size() );
+		}
+		
+		return ( frames < 0 ? Integer.MAX_VALUE : frames );
+	}
+	
+	/**
+	 * Gets the position and texture coordinates of every frame.  The
+	 * table is built the first time this is called after the texture
+	 * has loaded, and is shared by everything drawing this sprite.
+	 * 
+	 * @return the frame table, or null if the texture has not loaded
+	 */
+	public FrameTable getFrameTable() {
+		FrameTable t = table;
+		if ( t == null && sprite.isLoaded() ) {
+			if ( width == 0 ) {
+				width = sprite.getWidth();
+				height = sprite.getHeight();
+			}
+			
+			t = new FrameTable(sprite, frames, width, height, sx, sy, horSep, vertSep);
+			table = t;
+		}
+		
+		return ( t );
 	}
 	
 	/**
@@ -99,42 +137,55 @@ public class Sprite {
 	 * @param frame the frame
 	 */
 	public void draw(int x, int y, int frame) {
-		if ( sprite.isLoaded() ) {
-			if ( width == 0 ) {
-				width = sprite.getWidth();
-				height = sprite.getHeight();
-			}
-			
-			int fx = sx;
-			int fy = sy;
-			for ( int i = 0; i < frame; i++ ) {
-				fx += width + horSep;
-				if ( fx + width > sprite.getWidth() ) {
-					fx = sx;
-					fy += height + vertSep;
-				}
-			}
-			
-			double tx = (double) fx / sprite.getWidth();
-			double ty = (double) fy / sprite.getHeight();
-			double tw = (double) width / sprite.getWidth();
-			double th = (double) height / sprite.getHeight();
+		FrameTable t = getFrameTable();
+		if ( t != null ) {
+			int i = t.clamp(frame);
+			float u1 = t.getU1(i);
+			float v1 = t.getV1(i);
+			float u2 = t.getU2(i);
+			float v2 = t.getV2(i);
 			
 			// TODO: Update this to use new openGL
 			GL11.glEnable(GL11.GL_TEXTURE_2D);
 			GL11.glBindTexture(GL11.GL_TEXTURE_2D, sprite.getID());
 			GL11.glBegin(GL11.GL_QUADS);
-			GL11.glTexCoord2d(tx, ty);
+			GL11.glTexCoord2f(u1, v1);
 			GL11.glVertex2d(x, y);
-			GL11.glTexCoord2d(tx + tw, ty);
+			GL11.glTexCoord2f(u2, v1);
 			GL11.glVertex2d(x + width, y);
-			GL11.glTexCoord2d(tx + tw, ty + th);
+			GL11.glTexCoord2f(u2, v2);
 			GL11.glVertex2d(x + width, y + height);
-			GL11.glTexCoord2d(tx, ty + th);
+			GL11.glTexCoord2f(u1, v2);
 			GL11.glVertex2d(x, y + height);
 			GL11.glEnd();
 			GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
 			GL11.glDisable(GL11.GL_TEXTURE_2D);
 		}
 	}
+	
+	/**
+	 * Adds the sprite to a batch at the specified location with the
+	 * specified frame, instead of drawing it right away.
+	 * 
+	 * @param batch the batch
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param frame the frame
+	 * @param col the tint, or null for none
+	 */
+	public void draw(SpriteBatch batch, double x, double y, int frame, Color col) {
+		FrameTable t = getFrameTable();
+		if ( t != null ) {
+			int i = t.clamp(frame);
+			batch.add(sprite.getID(), x, y, x + width, y + height,
+					t.getU1(i), t.getV1(i), t.getU2(i), t.getV2(i), col);
+		}
+	}
+	
+	/**
+	 * @return the texture this sprite is drawn from
+	 */
+	public Texture getTexture() {
+		return ( sprite );
+	}
 }
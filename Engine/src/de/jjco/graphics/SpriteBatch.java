@@ -0,0 +1,450 @@
+package de.jjco.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+
+import de.jjco.Color;
+
+/**
+ * Collects textured quads and draws them with as few OpenGL calls as
+ * possible.  Quads are transformed on the CPU by a matrix stack that
+ * works like OpenGL's, then sorted by blend mode and texture, copied
+ * into a streamed vertex buffer and drawn with one call for each run
+ * of quads sharing a texture and blend mode.
+ * <p>
+ * Sorting keeps the order quads were added in among quads with the
+ * same texture and blend mode, but quads with different textures can
+ * end up drawn in a different order.  Turn sorting off when sprites
+ * with different textures overlap and their order matters.
+ * <p>
+ * A SpriteBatch must only be used on the thread that owns the OpenGL
+ * context it draws to.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see de.jjco.BatchedWindowSetup
+ */
+public class SpriteBatch {
+	/**
+	 * Blends by the source's alpha.  This is the default.
+	 */
+	public static final int BLEND_ALPHA = 0;
+	
+	/**
+	 * Adds the source, scaled by its alpha, onto the destination.
+	 */
+	public static final int BLEND_ADD = 1;
+	
+	/**
+	 * Replaces the destination without blending.
+	 */
+	public static final int BLEND_NONE = 2;
+	
+	/**
+	 * Blends by the source's alpha, and discards texels with less than
+	 * half alpha.  This draws distance field textures, like those of an
+	 * SdfFont, with sharp edges.
+	 */
+	public static final int BLEND_DISTANCE_FIELD = 3;
+	
+	// x, y, u, v as floats followed by the color as 4 bytes
+	private static final int VERTEX_SIZE = 20;
+	private static final int QUAD_FLOATS = 16;
+	private static final int MAX_QUADS = 1 << 24;
+	
+	// Queued quads
+	private float[] verts = new float[QUAD_FLOATS * 256];
+	private int[] colors = new int[256];
+	private int[] textures = new int[256];
+	private int[] blends = new int[256];
+	private long[] keys = new long[256];
+	private int count;
+	
+	// Transform stack, only ever translated and rotated
+	private double[] tx = new double[32];
+	private double[] ty = new double[32];
+	private double[] angle = new double[32];
+	private double[] cos = new double[32];
+	private double[] sin = new double[32];
+	private int depth;
+	
+	private int blend = BLEND_ALPHA;
+	private boolean sorting = true;
+	
+	private ByteBuffer buffer;
+	private int vbo = -1;
+	
+	private int drawCalls;
+	private int quads;
+	private int lastDrawCalls;
+	private int lastQuads;
+	
+	/**
+	 * Creates an empty sprite batch.  The vertex buffer is created
+	 * the first time the batch is flushed.
+	 */
+	public SpriteBatch() {
+		cos[0] = 1;
+	}
+	
+	/**
+	 * Starts a new frame, resetting the transform and the statistics.
+	 */
+	public void begin() {
+		count = 0;
+		depth = 0;
+		tx[0] = 0;
+		ty[0] = 0;
+		angle[0] = 0;
+		cos[0] = 1;
+		sin[0] = 0;
+		blend = BLEND_ALPHA;
+		drawCalls = 0;
+		quads = 0;
+	}
+	
+	/**
+	 * Draws everything still queued and finishes the frame.
+	 */
+	public void end() {
+		flush();
+		lastDrawCalls = drawCalls;
+		lastQuads = quads;
+	}
+	
+	/**
+	 * Saves the current transform.
+	 */
+	public void push() {
+		if (depth + 1 == tx.length) {
+			int n = tx.length * 2;
+			tx = Arrays.copyOf(tx, n);
+			ty = Arrays.copyOf(ty, n);
+			angle = Arrays.copyOf(angle, n);
+			cos = Arrays.copyOf(cos, n);
+			sin = Arrays.copyOf(sin, n);
+		}
+		
+		tx[depth + 1] = tx[depth];
+		ty[depth + 1] = ty[depth];
+		angle[depth + 1] = angle[depth];
+		cos[depth + 1] = cos[depth];
+		sin[depth + 1] = sin[depth];
+		depth++;
+	}
+	
+	/**
+	 * Restores the transform saved by the matching push.
+	 */
+	public void pop() {
+		if (depth > 0) {
+			depth--;
+		}
+	}
+	
+	/**
+	 * Moves the current transform, in its own rotated space.
+	 * 
+	 * @param x the x distance
+	 * @param y the y distance
+	 */
+	public void translate(double x, double y) {
+		tx[depth] += cos[depth] * x - sin[depth] * y;
+		ty[depth] += sin[depth] * x + cos[depth] * y;
+	}
+	
+	/**
+	 * Rotates the current transform.
+	 * 
+	 * @param a the angle in degrees
+	 */
+	public void rotate(double a) {
+		if (a != 0) {
+			double r = Math.toRadians(angle[depth] += a);
+			cos[depth] = Math.cos(r);
+			sin[depth] = Math.sin(r);
+		}
+	}
+	
+	/**
+	 * Applies the current transform to the OpenGL modelview matrix,
+	 * so that something drawn directly lines up with the batch.  Flush
+	 * the batch before drawing directly, or the queued quads will end
+	 * up drawn over it.
+	 */
+	public void applyTransform() {
+		GL11.glTranslated(tx[depth], ty[depth], 0);
+		GL11.glRotated(angle[depth], 0, 0, 1);
+	}
+	
+	/**
+	 * Sets the blend mode used by quads added after this.
+	 * 
+	 * @param mode one of the BLEND constants
+	 */
+	public void setBlendMode(int mode) {
+		blend = mode;
+	}
+	
+	/**
+	 * @return the blend mode used by quads added now
+	 */
+	public int getBlendMode() {
+		return (blend);
+	}
+	
+	/**
+	 * Sets whether queued quads are sorted by blend mode and texture
+	 * before they are drawn.
+	 * 
+	 * @param b whether to sort
+	 */
+	public void setSorting(boolean b) {
+		sorting = b;
+	}
+	
+	/**
+	 * @return whether queued quads are sorted before they are drawn
+	 */
+	public boolean isSorting() {
+		return (sorting);
+	}
+	
+	/**
+	 * Queues a quad, transformed by the current transform.
+	 * 
+	 * @param texture the texture ID, or 0 for an untextured quad
+	 * @param x1 the left edge
+	 * @param y1 the top edge
+	 * @param x2 the right edge
+	 * @param y2 the bottom edge
+	 * @param u1 the left texture coordinate
+	 * @param v1 the top texture coordinate
+	 * @param u2 the right texture coordinate
+	 * @param v2 the bottom texture coordinate
+	 * @param c the tint, or null for white
+	 */
+	public void add(int texture, double x1, double y1, double x2, double y2,
+			double u1, double v1, double u2, double v2, Color c) {
+		if (count == MAX_QUADS) {
+			flush();
+		} else if (count == colors.length) {
+			grow();
+		}
+		
+		double c0 = cos[depth];
+		double s0 = sin[depth];
+		double ox = tx[depth];
+		double oy = ty[depth];
+		
+		int i = count * QUAD_FLOATS;
+		float[] v = verts;
+		v[i] = (float) (ox + c0 * x1 - s0 * y1);
+		v[i + 1] = (float) (oy + s0 * x1 + c0 * y1);
+		v[i + 2] = (float) u1;
+		v[i + 3] = (float) v1;
+		v[i + 4] = (float) (ox + c0 * x2 - s0 * y1);
+		v[i + 5] = (float) (oy + s0 * x2 + c0 * y1);
+		v[i + 6] = (float) u2;
+		v[i + 7] = (float) v1;
+		v[i + 8] = (float) (ox + c0 * x2 - s0 * y2);
+		v[i + 9] = (float) (oy + s0 * x2 + c0 * y2);
+		v[i + 10] = (float) u2;
+		v[i + 11] = (float) v2;
+		v[i + 12] = (float) (ox + c0 * x1 - s0 * y2);
+		v[i + 13] = (float) (oy + s0 * x1 + c0 * y2);
+		v[i + 14] = (float) u1;
+		v[i + 15] = (float) v2;
+		
+		colors[count] = (c == null) ? 0xFFFFFFFF : (c.getRedInt() & 0xFF)
+				| (c.getGreenInt() & 0xFF) << 8
+				| (c.getBlueInt() & 0xFF) << 16
+				| (c.getAlphaInt() & 0xFF) << 24;
+		textures[count] = texture;
+		blends[count] = blend;
+		count++;
+	}
+	
+	private void grow() {
+		int n = colors.length * 2;
+		verts = Arrays.copyOf(verts, n * QUAD_FLOATS);
+		colors = Arrays.copyOf(colors, n);
+		textures = Arrays.copyOf(textures, n);
+		blends = Arrays.copyOf(blends, n);
+		keys = new long[n];
+	}
+	
+	/**
+	 * Draws every queued quad now.  This must be called before
+	 * drawing anything directly with OpenGL.
+	 */
+	public void flush() {
+		if (count == 0) {
+			return;
+		}
+		
+		// Blend mode, then texture, then the order the quads were added in
+		for (int i = 0; i < count; i++) {
+			keys[i] = sorting ? ((long) blends[i] << 56) | ((textures[i] & 0xFFFFFFFFL) << 24) | i : i;
+		}
+		
+		if (sorting) {
+			Arrays.sort(keys, 0, count);
+		}
+		
+		int bytes = count * 4 * VERTEX_SIZE;
+		if (buffer == null || buffer.capacity() < bytes) {
+			buffer = ByteBuffer.allocateDirect(Math.max(bytes, 64 * 4 * VERTEX_SIZE) * 2);
+			buffer.order(ByteOrder.nativeOrder());
+		}
+		
+		buffer.clear();
+		for (int n = 0; n < count; n++) {
+			int q = (int) (keys[n] & (MAX_QUADS - 1));
+			int col = colors[q];
+			
+			for (int i = q * QUAD_FLOATS, end = i + QUAD_FLOATS; i < end; i += 4) {
+				buffer.putFloat(verts[i]);
+				buffer.putFloat(verts[i + 1]);
+				buffer.putFloat(verts[i + 2]);
+				buffer.putFloat(verts[i + 3]);
+				buffer.put((byte) col);
+				buffer.put((byte) (col >> 8));
+				buffer.put((byte) (col >> 16));
+				buffer.put((byte) (col >> 24));
+			}
+		}
+		
+		buffer.flip();
+		
+		// Orphan last flush's storage instead of waiting on it
+		if (vbo == -1) {
+			vbo = GL15.glGenBuffers();
+		}
+		
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer.capacity(), GL15.GL_STREAM_DRAW);
+		GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, buffer);
+		
+		GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+		GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+		GL11.glVertexPointer(2, GL11.GL_FLOAT, VERTEX_SIZE, 0);
+		GL11.glTexCoordPointer(2, GL11.GL_FLOAT, VERTEX_SIZE, 8);
+		GL11.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, VERTEX_SIZE, 16);
+		
+		int boundTex = 0;
+		int boundBlend = BLEND_ALPHA;
+		int start = 0;
+		
+		while (start < count) {
+			int q = (int) (keys[start] & (MAX_QUADS - 1));
+			int tex = textures[q];
+			int mode = blends[q];
+			
+			int end = start + 1;
+			while (end < count) {
+				int r = (int) (keys[end] & (MAX_QUADS - 1));
+				if (textures[r] != tex || blends[r] != mode) {
+					break;
+				}
+				
+				end++;
+			}
+			
+			if (tex != boundTex) {
+				if (boundTex == 0) {
+					GL11.glEnable(GL11.GL_TEXTURE_2D);
+				} else if (tex == 0) {
+					GL11.glDisable(GL11.GL_TEXTURE_2D);
+				}
+				
+				GL11.glBindTexture(GL11.GL_TEXTURE_2D, tex);
+				boundTex = tex;
+			}
+			
+			if (mode != boundBlend) {
+				bindBlend(mode);
+				boundBlend = mode;
+			}
+			
+			GL11.glDrawArrays(GL11.GL_QUADS, start * 4, (end - start) * 4);
+			drawCalls++;
+			start = end;
+		}
+		
+		// Leave OpenGL the way immediate mode drawing expects it
+		if (boundTex != 0) {
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+			GL11.glDisable(GL11.GL_TEXTURE_2D);
+		}
+		
+		if (boundBlend != BLEND_ALPHA) {
+			bindBlend(BLEND_ALPHA);
+		}
+		
+		GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+		GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+		Color.WHITE.bind();
+		
+		quads += count;
+		count = 0;
+	}
+	
+	private static void bindBlend(int mode) {
+		switch (mode) {
+		case BLEND_ADD:
+			GL11.glDisable(GL11.GL_ALPHA_TEST);
+			GL11.glEnable(GL11.GL_BLEND);
+			GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE);
+			break;
+		case BLEND_NONE:
+			GL11.glDisable(GL11.GL_ALPHA_TEST);
+			GL11.glDisable(GL11.GL_BLEND);
+			break;
+		case BLEND_DISTANCE_FIELD:
+			GL11.glEnable(GL11.GL_ALPHA_TEST);
+			GL11.glAlphaFunc(GL11.GL_GEQUAL, 0.5f);
+			GL11.glEnable(GL11.GL_BLEND);
+			GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+			break;
+		default:
+			GL11.glDisable(GL11.GL_ALPHA_TEST);
+			GL11.glEnable(GL11.GL_BLEND);
+			GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+		}
+	}
+	
+	/**
+	 * Deletes the vertex buffer.  The batch can still be used
+	 * afterwards, and will create a new one.
+	 */
+	public void destroy() {
+		if (vbo != -1) {
+			GL15.glDeleteBuffers(vbo);
+			vbo = -1;
+		}
+		
+		count = 0;
+	}
+	
+	/**
+	 * @return the number of draw calls made in the last frame
+	 */
+	public int getDrawCalls() {
+		return (lastDrawCalls);
+	}
+	
+	/**
+	 * @return the number of quads drawn in the last frame
+	 */
+	public int getQuadCount() {
+		return (lastQuads);
+	}
+}
@@ -0,0 +1,197 @@
+package de.jjco.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import org.lwjgl.opengl.GL11;
+
+import de.jjco.Color;
+
+/**
+ * A string laid out in a Font once, so it can be drawn again and again
+ * without measuring it or working out its glyphs each time.  Layouts
+ * never change once made; the quads are kept relative to the top left
+ * of the text, and alignment is applied as an offset when drawing.
+ * <p>
+ * Fonts keep the layouts they make in a small cache, so drawing the
+ * same string every frame reuses the same layout.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see Font#getLayout(String)
+ */
+public final class TextLayout {
+	private final Font font;
+	private final String text;
+	private final int width;
+	private final int height;
+	
+	// x1, y1, x2, y2, u1, v1, u2, v2 for each glyph, and the font page it is on
+	private final float[] glyphs;
+	private final int[] pages;
+	private final int count;
+	
+	// The font's generation when this was laid out
+	private final int generation;
+	
+	// Interleaved x, y, u, v for each vertex, made when first drawn directly
+	private volatile FloatBuffer vertices;
+	
+	TextLayout(Font f, String s, int w, int h, float[] g, int[] p, int n) {
+		font = f;
+		text = s;
+		width = w;
+		height = h;
+		glyphs = g;
+		pages = p;
+		count = n;
+		generation = f.getGeneration();
+	}
+	
+	/**
+	 * @return the font this was laid out in
+	 */
+	public Font getFont() {
+		return (font);
+	}
+	
+	/**
+	 * Checks whether the font has changed how it lays out text since
+	 * this was laid out, as when an SdfFont is resized.  A stale layout
+	 * still draws, but as the font was before the change.
+	 * 
+	 * @return true if the text should be laid out again
+	 */
+	public boolean isStale() {
+		return (generation != font.getGeneration());
+	}
+	
+	/**
+	 * @return the text this was laid out from
+	 */
+	public String getText() {
+		return (text);
+	}
+	
+	/**
+	 * @return the width of the text
+	 */
+	public int getWidth() {
+		return (width);
+	}
+	
+	/**
+	 * @return the height of the text
+	 */
+	public int getHeight() {
+		return (height);
+	}
+	
+	/**
+	 * @return the number of glyphs drawn
+	 */
+	public int getGlyphCount() {
+		return (count);
+	}
+	
+	private double alignX(double x, int ha) {
+		return (x - width * (ha + 1) / 2);
+	}
+	
+	private double alignY(double y, int va) {
+		return (y + height - height * (va + 1) / 2);
+	}
+	
+	/**
+	 * Draws the text with one draw call, in the current color.
+	 * 
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param ha the horizontal alignment, one of the Font ALIGN constants
+	 * @param va the vertical alignment, one of the Font ALIGN constants
+	 */
+	public void draw(double x, double y, int ha, int va) {
+		if (count == 0) {
+			return;
+		}
+		
+		FloatBuffer v = vertices;
+		if (v == null) {
+			v = ByteBuffer.allocateDirect(count * 16 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+			for (int i = 0; i < count * 8; i += 8) {
+				v.put(glyphs[i]).put(glyphs[i + 1]).put(glyphs[i + 4]).put(glyphs[i + 5]);
+				v.put(glyphs[i + 2]).put(glyphs[i + 1]).put(glyphs[i + 6]).put(glyphs[i + 5]);
+				v.put(glyphs[i + 2]).put(glyphs[i + 3]).put(glyphs[i + 6]).put(glyphs[i + 7]);
+				v.put(glyphs[i]).put(glyphs[i + 3]).put(glyphs[i + 4]).put(glyphs[i + 7]);
+			}
+			
+			v.rewind();
+			vertices = v;
+		}
+		
+		FloatBuffer uv = v.duplicate();
+		uv.position(2);
+		
+		font.uploadGlyphs();
+		boolean df = font.getBlendMode() == SpriteBatch.BLEND_DISTANCE_FIELD;
+		
+		GL11.glPushMatrix();
+		GL11.glTranslated(alignX(x, ha), alignY(y, va), 0);
+		GL11.glEnable(GL11.GL_TEXTURE_2D);
+		GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+		GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glVertexPointer(2, GL11.GL_FLOAT, 16, v.duplicate());
+		GL11.glTexCoordPointer(2, GL11.GL_FLOAT, 16, uv);
+		if (df) {
+			GL11.glEnable(GL11.GL_ALPHA_TEST);
+			GL11.glAlphaFunc(GL11.GL_GEQUAL, 0.5f);
+		}
+		
+		// One draw for each run of glyphs on the same page
+		for (int start = 0, end; start < count; start = end) {
+			for (end = start + 1; end < count && pages[end] == pages[start]; end++);
+			
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, font.getPageTexture(pages[start]));
+			GL11.glDrawArrays(GL11.GL_QUADS, start * 4, (end - start) * 4);
+		}
+		
+		if (df) {
+			GL11.glDisable(GL11.GL_ALPHA_TEST);
+		}
+		
+		GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+		GL11.glDisable(GL11.GL_TEXTURE_2D);
+		GL11.glPopMatrix();
+	}
+	
+	/**
+	 * Adds the text to a batch, so it is drawn along with sprites.
+	 * 
+	 * @param batch the batch
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param ha the horizontal alignment, one of the Font ALIGN constants
+	 * @param va the vertical alignment, one of the Font ALIGN constants
+	 * @param col the color, or null for white
+	 */
+	public void draw(SpriteBatch batch, double x, double y, int ha, int va, Color col) {
+		double ox = alignX(x, ha);
+		double oy = alignY(y, va);
+		font.uploadGlyphs();
+		
+		int mode = batch.getBlendMode();
+		if (mode == SpriteBatch.BLEND_ALPHA) {
+			batch.setBlendMode(font.getBlendMode());
+		}
+		
+		for (int i = 0, n = 0; i < count * 8; i += 8, n++) {
+			batch.add(font.getPageTexture(pages[n]), ox + glyphs[i], oy + glyphs[i + 1], ox + glyphs[i + 2], oy + glyphs[i + 3],
+					glyphs[i + 4], glyphs[i + 5], glyphs[i + 6], glyphs[i + 7], col);
+		}
+		
+		batch.setBlendMode(mode);
+	}
+}
@@ -38,6 +38,48 @@ public abstract class Texture extends GLResource {
 		return ( height );
 	}
 	
+	/**
+	 * Gets where this texture's image starts inside the OpenGL texture.
+	 * This is 0 unless the image shares the texture with others, like
+	 * a region of a TextureAtlas.
+	 * 
+	 * @return the x coordinate of the image
+	 * @see TextureAtlas
+	 */
+	public int getOffsetX() {
+		return ( 0 );
+	}
+	
+	/**
+	 * Gets where this texture's image starts inside the OpenGL texture.
+	 * 
+	 * @return the y coordinate of the image
+	 * @see #getOffsetX()
+	 */
+	public int getOffsetY() {
+		return ( 0 );
+	}
+	
+	/**
+	 * Gets the width of the whole OpenGL texture, which is larger than
+	 * the image when the image shares the texture with others.
+	 * 
+	 * @return the OpenGL texture width
+	 */
+	public int getTextureWidth() {
+		return ( getWidth() );
+	}
+	
+	/**
+	 * Gets the height of the whole OpenGL texture.
+	 * 
+	 * @return the OpenGL texture height
+	 * @see #getTextureWidth()
+	 */
+	public int getTextureHeight() {
+		return ( getHeight() );
+	}
+
 	protected void doDestroy() {
 		textureID = -1;
 	}
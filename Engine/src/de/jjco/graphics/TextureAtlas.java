@@ -0,0 +1,508 @@
+package de.jjco.graphics;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+import javax.imageio.ImageIO;
+
+import org.lwjgl.opengl.GL11;
+
+import de.jjco.EngineLog;
+import de.jjco.resources.FileSystem;
+import de.jjco.resources.GLResource;
+
+/**
+ * Packs many images into a few large OpenGL textures, called pages, so
+ * that sprites drawn from them share textures and can be batched.  Each
+ * image added becomes a Region, which is a Texture that can be passed to
+ * Sprite.loadImage and Sprite.loadSheet like any other.
+ * <p>
+ * Loading the atlas reads every region added so far and packs them
+ * tallest first, which packs tighter than loading them one at a time.
+ * Regions added later, or loaded on their own, are packed into the
+ * space left over when they load, and a new page is started when an
+ * image does not fit.  Space is not reclaimed when a region is destroyed.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see Sprite
+ */
+public class TextureAtlas extends GLResource {
+	private ArrayList<Region> regions = new ArrayList<Region>();
+	private ArrayList<Page> pages = new ArrayList<Page>();
+	private int pageSize;
+	private int padding;
+	
+	// Cleared pixels for the padding, only used on the GL thread
+	private ByteBuffer zeros;
+	
+	/**
+	 * Creates an atlas with 1 pixel between images.
+	 * 
+	 * @param size the width and height of each page
+	 */
+	public TextureAtlas(int size) {
+		this(size, 1);
+	}
+	
+	/**
+	 * Creates an atlas.
+	 * 
+	 * @param size the width and height of each page
+	 * @param pad the empty pixels left between images, which stops
+	 * them bleeding into each other when filtered
+	 */
+	public TextureAtlas(int size, int pad) {
+		pageSize = size;
+		padding = pad;
+	}
+	
+	/**
+	 * Adds an image from the FileSystem to this atlas.
+	 * 
+	 * @param resource the path of the image
+	 * @return the image's region
+	 */
+	public Region add(String resource) {
+		Region r = new Region(this, resource, null);
+		synchronized (this) {
+			regions.add(r);
+		}
+		
+		return (r);
+	}
+	
+	/**
+	 * Adds an image to this atlas.
+	 * 
+	 * @param bi the image
+	 * @return the image's region
+	 */
+	public Region add(BufferedImage bi) {
+		Region r = new Region(this, null, bi);
+		synchronized (this) {
+			regions.add(r);
+		}
+		
+		return (r);
+	}
+	
+	/**
+	 * @return the number of pages created so far
+	 */
+	public synchronized int getNumPages() {
+		return (pages.size());
+	}
+	
+	@Override
+	protected void doLoad() {
+		ArrayList<Region> waiting = new ArrayList<Region>();
+		synchronized (this) {
+			for (Region r : regions) {
+				if (r.page == null) {
+					waiting.add(r);
+				}
+			}
+		}
+		
+		for (Region r : waiting) {
+			r.read();
+		}
+		
+		Collections.sort(waiting, new Comparator<Region>() {
+			@Override
+			public int compare(Region a, Region b) {
+				return (b.height - a.height);
+			}
+		});
+		
+		for (Region r : waiting) {
+			place(r);
+		}
+	}
+	
+	@Override
+	protected void doLoadWithGL() {
+		Region[] rs;
+		synchronized (this) {
+			rs = regions.toArray(new Region[regions.size()]);
+		}
+		
+		for (Region r : rs) {
+			if (!r.isLoaded() && r.page != null) {
+				r.loadWithGL();
+			}
+		}
+	}
+	
+	@Override
+	protected void doDestroy() {
+		Region[] rs;
+		synchronized (this) {
+			rs = regions.toArray(new Region[regions.size()]);
+		}
+		
+		for (Region r : rs) {
+			r.destroy();
+		}
+	}
+	
+	@Override
+	protected void doDestroyWithGL() {
+		EngineLog.log("Destroying " + this);
+		
+		synchronized (this) {
+			for (Page p : pages) {
+				if (p.textureID != -1) {
+					GL11.glDeleteTextures(p.textureID);
+					p.textureID = -1;
+				}
+			}
+		}
+		
+		zeros = null;
+	}
+	
+	/**
+	 * Finds room for a region, starting a new page if none has any.
+	 */
+	private synchronized void place(Region r) {
+		if (r.page != null || r.pixels == null) {
+			return;
+		}
+		
+		int w = r.width + padding;
+		int h = r.height + padding;
+		
+		for (Page p : pages) {
+			if (p.insert(r, w, h)) {
+				return;
+			}
+		}
+		
+		// Images larger than a page get a page to themselves
+		Page p = new Page(Math.max(pageSize, Math.max(w, h)));
+		pages.add(p);
+		p.insert(r, w, h);
+	}
+	
+	/**
+	 * Copies a placed region into its page.  Called on the GL thread.
+	 */
+	private void upload(Region r) {
+		Page p = r.page;
+		ByteBuffer buf = r.pixels;
+		if (p == null || buf == null) {
+			return;
+		}
+		
+		if (p.textureID == -1) {
+			p.textureID = GL11.glGenTextures();
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, p.textureID);
+			GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, p.size, p.size, 0,
+					GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+			
+			EngineLog.log("Created atlas page " + p.textureID + " (" + p.size + "x" + p.size + ")");
+		} else {
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, p.textureID);
+		}
+		
+		GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, r.x, r.y, r.width, r.height,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, buf);
+		clearGutter(r);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+		r.pixels = null;
+	}
+	
+	/**
+	 * Clears the padding right of and below a region.  Pages are created
+	 * without clearing them, and filtering samples the texels just
+	 * outside each region.  Called on the GL thread with the page bound.
+	 */
+	private void clearGutter(Region r) {
+		int size = r.page.size;
+		int right = Math.min(padding, size - r.x - r.width);
+		int below = Math.min(padding, size - r.y - r.height);
+		int need = Math.max(right * Math.min(r.height + padding, size - r.y), r.width * below) * 4;
+		
+		if (need <= 0) {
+			return;
+		}
+		
+		if (zeros == null || zeros.capacity() < need) {
+			zeros = ByteBuffer.allocateDirect(Math.max(need, pageSize * padding * 4));
+		}
+		
+		if (right > 0) {
+			GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, r.x + r.width, r.y, right, Math.min(r.height + padding, size - r.y),
+					GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, zeros);
+		}
+		
+		if (below > 0) {
+			GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, r.x, r.y + r.height, r.width, below,
+					GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, zeros);
+		}
+	}
+	
+	/**
+	 * An image packed into a TextureAtlas.  Its ID is the ID of the
+	 * page it was packed into, and its offset is where in the page.
+	 * 
+	 * @author Jared Jonas (bluesun212)
+	 * @version Revision 1
+	 */
+	public static class Region extends Texture {
+		private TextureAtlas atlas;
+		private String resource;
+		private BufferedImage img;
+		
+		// Set once placed, guarded by the atlas
+		private volatile Page page;
+		private int x;
+		private int y;
+		private ByteBuffer pixels;
+		
+		private Region(TextureAtlas a, String res, BufferedImage bi) {
+			atlas = a;
+			resource = res;
+			img = bi;
+		}
+		
+		/**
+		 * @return the atlas this region belongs to
+		 */
+		public TextureAtlas getAtlas() {
+			return (atlas);
+		}
+		
+		@Override
+		public int getID() {
+			Page p = page;
+			return ((p == null) ? -1 : p.textureID);
+		}
+		
+		@Override
+		public boolean isLoaded() {
+			return (super.isLoaded() && page != null);
+		}
+		
+		@Override
+		public int getOffsetX() {
+			return (x);
+		}
+		
+		@Override
+		public int getOffsetY() {
+			return (y);
+		}
+		
+		@Override
+		public int getTextureWidth() {
+			Page p = page;
+			return ((p == null) ? width : p.size);
+		}
+		
+		@Override
+		public int getTextureHeight() {
+			Page p = page;
+			return ((p == null) ? height : p.size);
+		}
+		
+		/**
+		 * Reads the image into RGBA pixels, if that has not happened yet.
+		 */
+		private synchronized void read() {
+			if (pixels != null || page != null) {
+				return;
+			}
+			
+			BufferedImage bi = img;
+			if (bi == null && resource != null) {
+				InputStream is = FileSystem.getInputStream(resource);
+				if (is != null) {
+					try {
+						bi = ImageIO.read(is);
+					} catch (IOException e) {
+						e.printStackTrace();
+					} finally {
+						try {
+							is.close();
+						} catch (IOException e) {}
+					}
+				}
+			}
+			
+			if (bi == null) {
+				EngineLog.logException("Could not read " + resource + " into " + atlas);
+				return;
+			}
+			
+			width = bi.getWidth();
+			height = bi.getHeight();
+			
+			BufferedImage argb = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics g = argb.getGraphics();
+			g.drawImage(bi, 0, 0, null);
+			g.dispose();
+			
+			int[] data = ((DataBufferInt) argb.getRaster().getDataBuffer()).getData();
+			ByteBuffer buf = ByteBuffer.allocateDirect(data.length * 4);
+			for (int i = 0; i < data.length; i++) {
+				buf.put((byte) ((data[i] >> 16) & 0xff));
+				buf.put((byte) ((data[i] >> 8) & 0xff));
+				buf.put((byte) (data[i] & 0xff));
+				buf.put((byte) ((data[i] >> 24) & 0xff));
+			}
+			
+			buf.rewind();
+			pixels = buf;
+			img = null;
+		}
+		
+		@Override
+		protected void doLoad() {
+			read();
+			atlas.place(this);
+		}
+		
+		@Override
+		protected void doLoadWithGL() {
+			atlas.upload(this);
+			EngineLog.log("Loaded " + resource + " into atlas page " + getID() + " at " + x + ", " + y);
+		}
+		
+		@Override
+		protected void doDestroy() {
+			pixels = null;
+			img = null;
+		}
+		
+		@Override
+		protected void doDestroyWithGL() {
+			
+		}
+	}
+	
+	/**
+	 * One OpenGL texture of an atlas, packed with a skyline: the top
+	 * edge of the used space is kept as a list of horizontal segments,
+	 * and each image goes wherever it would sit lowest.
+	 */
+	private static class Page {
+		private final int size;
+		private int textureID = -1;
+		
+		private int[] segX = new int[16];
+		private int[] segY = new int[16];
+		private int[] segW = new int[16];
+		private int segs;
+		
+		private Page(int s) {
+			size = s;
+			segW[0] = s;
+			segs = 1;
+		}
+		
+		private boolean insert(Region r, int w, int h) {
+			int best = -1;
+			int bestY = Integer.MAX_VALUE;
+			
+			for (int i = 0; i < segs; i++) {
+				int y = fit(i, w, h);
+				if (y != -1 && y < bestY) {
+					best = i;
+					bestY = y;
+				}
+			}
+			
+			if (best == -1) {
+				return (false);
+			}
+			
+			r.x = segX[best];
+			r.y = bestY;
+			r.page = this;
+			add(best, segX[best], bestY + h, w);
+			return (true);
+		}
+		
+		/**
+		 * Gets how low an image can sit with its left edge on a segment.
+		 * 
+		 * @return the y coordinate, or -1 if it does not fit there
+		 */
+		private int fit(int i, int w, int h) {
+			if (segX[i] + w > size) {
+				return (-1);
+			}
+			
+			int y = 0;
+			for (int left = w; left > 0; i++) {
+				y = Math.max(y, segY[i]);
+				if (y + h > size) {
+					return (-1);
+				}
+				
+				left -= segW[i];
+			}
+			
+			return (y);
+		}
+		
+		private void add(int i, int x, int y, int w) {
+			if (segs == segX.length) {
+				segX = Arrays.copyOf(segX, segs * 2);
+				segY = Arrays.copyOf(segY, segs * 2);
+				segW = Arrays.copyOf(segW, segs * 2);
+			}
+			
+			System.arraycopy(segX, i, segX, i + 1, segs - i);
+			System.arraycopy(segY, i, segY, i + 1, segs - i);
+			System.arraycopy(segW, i, segW, i + 1, segs - i);
+			segX[i] = x;
+			segY[i] = y;
+			segW[i] = w;
+			segs++;
+			
+			// Cut back the segments now covered by the new one
+			int end = x + w;
+			while (i + 1 < segs && segX[i + 1] < end) {
+				int cut = end - segX[i + 1];
+				if (cut < segW[i + 1]) {
+					segX[i + 1] += cut;
+					segW[i + 1] -= cut;
+					break;
+				}
+				
+				remove(i + 1);
+			}
+			
+			// Join neighbours at the same height
+			for (int j = 0; j + 1 < segs; ) {
+				if (segY[j] == segY[j + 1]) {
+					segW[j] += segW[j + 1];
+					remove(j + 1);
+				} else {
+					j++;
+				}
+			}
+		}
+		
+		private void remove(int i) {
+			segs--;
+			System.arraycopy(segX, i + 1, segX, i, segs - i);
+			System.arraycopy(segY, i + 1, segY, i, segs - i);
+			System.arraycopy(segW, i + 1, segW, i, segs - i);
+		}
+	}
+}
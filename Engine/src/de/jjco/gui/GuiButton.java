@@ -18,13 +18,18 @@ import de.jjco.Window;
 public class GuiButton extends Gui {
 	private boolean disabled = false;
 	private String text = "";
+	private boolean listening = false;
 	
 	@Override
 	public void onReparent() {
 		if (getParent() == null) {
-			EventFactory.removeListener(this);
-		} else {
+			if (listening) {
+				EventFactory.removeListener(this);
+				listening = false;
+			}
+		} else if (!listening) {
 			EventFactory.addListener(this);
+			listening = true;
 		}
 	}
 	
@@ -3,9 +3,18 @@ package de.jjco.resources;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -13,13 +22,110 @@ import de.jjco.EngineLog;
 
 /**
  * The file system is an easy way to get input streams from certain resources.
+ * <p>
+ * Resources are looked up in each Mount of the mount table in turn, and
+ * the first to have the resource provides it.  By default these are the
+ * current jar, the mounted RODs, ZIP files and finally plain files.
+ * Mounts can be added or removed to change where resources come from.
+ * <p>
+ * ZIP files are kept open once read, along with an index of their
+ * entries, so reading many resources from one ZIP only opens it once.
+ * Resources that could not be found anywhere are remembered, and are not
+ * looked for again until the mount table changes or clearCache is called.
  * 
  * @author Jared Jonas (bluesun212)
  * @version Revision 1
  * @see ReadOnlyDirectory
  */
 public class FileSystem {
+	/**
+	 * Finds resources in the current jar.
+	 */
+	public static final Mount CLASSPATH = new Mount() {
+		@Override
+		public InputStream open(String resource) {
+			return ( FileSystem.class.getResourceAsStream("/" + resource) );
+		}
+	};
+	
+	/**
+	 * Finds resources in the ROD named after their root directory.
+	 * 
+	 * @see #mountROD(File)
+	 */
+	public static final Mount RODS = new Mount() {
+		@Override
+		public InputStream open(String resource) {
+			String root = getRoot(resource);
+			if ( root != null ) {
+				ReadOnlyDirectory rod = rods.get(root.toLowerCase());
+				if ( rod != null ) {
+					return ( rod.getResource(resource.substring(root.length() + 1)) );
+				}
+			}
+			
+			return ( null );
+		}
+	};
+	
+	/**
+	 * Finds resources in the ZIP file named after their root directory,
+	 * unless a ROD has been mounted with that name.
+	 */
+	public static final Mount ZIPS = new Mount() {
+		@Override
+		public InputStream open(String resource) {
+			String root = getRoot(resource);
+			if ( root == null || rods.containsKey(root.toLowerCase()) ) {
+				return ( null );
+			}
+			
+			Archive a = acquire(root + ".zip");
+			if ( a == null ) {
+				return ( null );
+			}
+			
+			ZipEntry ze = a.entries.get(resource);
+			if ( ze != null ) {
+				try {
+					// Released when the stream is closed
+					return ( new ArchiveInputStream(a, a.zip.getInputStream(ze)) );
+				} catch (IOException e) {
+					EngineLog.logException(e);
+				}
+			}
+			
+			release(a);
+			return ( null );
+		}
+	};
+	
+	/**
+	 * Finds resources as plain files.
+	 */
+	public static final Mount FILES = new Mount() {
+		@Override
+		public InputStream open(String resource) {
+			try {
+				return ( new FileInputStream(new File(resource)) );
+			} catch (FileNotFoundException e) {
+				return ( null );
+			}
+		}
+	};
+	
+	private static final int MAX_MISSES = 1024;
+	
 	private static ConcurrentHashMap<String, ReadOnlyDirectory> rods = new ConcurrentHashMap<String, ReadOnlyDirectory>();
+	private static CopyOnWriteArrayList<Mount> mounts = new CopyOnWriteArrayList<Mount>(new Mount[] {CLASSPATH, RODS, ZIPS, FILES});
+	private static ConcurrentHashMap<String, Boolean> misses = new ConcurrentHashMap<String, Boolean>();
+	
+	// Bumped by every change that may make a missing resource appear, guarded by misses
+	private static volatile int missGeneration;
+	
+	// Open ZIP files, least recently used first, guarded by itself
+	private static LinkedHashMap<String, Archive> archives = new LinkedHashMap<String, Archive>(16, 0.75f, true);
+	private static int maxArchives = 8;
 	
 	/**
 	 * When getting a stream for a file, it first checks the current jar.  If
@@ -27,44 +133,39 @@ public class FileSystem {
 	 * specified root.  If it does not exist, it checks the ZIP file with
 	 * the specified root name.  If that does not exist, then it searches
 	 * for the file with the given name.  If the file does not exist, it returns null.
+	 * The order can be changed by changing the mount table.
 	 * 
 	 * @param resource
 	 * @return the resource stream, or null if it does not exist
 	 */
 	public static InputStream getInputStream(String resource) {
 		EngineLog.log("Loading " + resource);
-		InputStream is = FileSystem.class.getResourceAsStream("/" + resource);
-		if ( is == null ) {
-			String root = getRoot(resource);
-			if ( root != null ) {
-				ReadOnlyDirectory rod = rods.get(root.toLowerCase());
-				if ( rod != null ) {
-					is = rod.getResource(resource.substring(root.length() + 1));
-				} else {
-					try {
-						ZipFile zf = new ZipFile(root + ".zip");
-						ZipEntry ze = zf.getEntry(resource);
-						if ( ze != null ) {
-							is = zf.getInputStream(ze);
-						}
-						zf.close();
-					} catch (IOException e) {
-						
-					}					
-				}
+		if ( resource == null || misses.containsKey(resource) ) {
+			return ( null );
+		}
+		
+		int gen = missGeneration;
+		for ( Mount m : mounts ) {
+			InputStream is = m.open(resource);
+			if ( is != null ) {
+				return ( is );
 			}
 		}
 		
-		if ( is == null ) {
-			try {
-				File f = new File(resource);
-				is = new FileInputStream(f);
-			} catch (FileNotFoundException e) {
-				EngineLog.logException("Could not find " + resource);
+		EngineLog.logException("Could not find " + resource);
+		
+		// A mount added while looking may have the resource, so only remember it if there was none
+		synchronized (misses) {
+			if ( gen == missGeneration ) {
+				if ( misses.size() >= MAX_MISSES ) {
+					misses.clear();
+				}
+				
+				misses.put(resource, Boolean.TRUE);
 			}
 		}
 		
-		return ( is );
+		return ( null );
 	}
 	
 	/**
@@ -75,10 +176,151 @@ public class FileSystem {
 	 */
 	public static boolean mountROD(File f) {
 		EngineLog.logGeneral("Mounting ROD: " + f.getName());
-		rods.put(getName(f.getName()), ReadOnlyDirectory.make(f));
+		String name = getName(f.getName());
+		ReadOnlyDirectory rod = ReadOnlyDirectory.make(f);
+		if ( name == null || rod == null ) {
+			EngineLog.logException("Could not mount ROD: " + f.getName());
+			return ( false );
+		}
+		
+		EngineLog.log("Mounted " + rod.size() + " resources from " + f.getName());
+		rods.put(name.toLowerCase(), rod);
+		forgetMisses();
 		return ( true );
 	}
 	
+	/**
+	 * Adds a mount to the end of the mount table.
+	 * 
+	 * @param m the mount
+	 */
+	public static void addMount(Mount m) {
+		mounts.add(m);
+		forgetMisses();
+	}
+	
+	/**
+	 * Adds a mount to the mount table, before the mount at the specified index.
+	 * 
+	 * @param i the index
+	 * @param m the mount
+	 */
+	public static void addMount(int i, Mount m) {
+		mounts.add(i, m);
+		forgetMisses();
+	}
+	
+	/**
+	 * Removes a mount from the mount table.
+	 * 
+	 * @param m the mount
+	 * @return true if it was in the table
+	 */
+	public static boolean removeMount(Mount m) {
+		return ( mounts.remove(m) );
+	}
+	
+	/**
+	 * @return the mount table, in the order resources are looked for
+	 */
+	public static List<Mount> getMounts() {
+		return ( new ArrayList<Mount>(mounts) );
+	}
+	
+	/**
+	 * Sets how many ZIP files are kept open.  ZIP files still being read
+	 * from are closed once they have been read.
+	 * 
+	 * @param n the number of ZIP files
+	 */
+	public static void setMaxOpenArchives(int n) {
+		synchronized (archives) {
+			maxArchives = n;
+			trim();
+		}
+	}
+	
+	/**
+	 * Forgets which resources could not be found and closes every ZIP file
+	 * not being read from.  Call this after files are added or changed.
+	 */
+	public static void clearCache() {
+		forgetMisses();
+		
+		synchronized (archives) {
+			for ( Archive a : archives.values() ) {
+				if ( a == null ) {
+					continue;
+				}
+				
+				a.cached = false;
+				if ( a.refs == 0 ) {
+					a.close();
+				}
+			}
+			
+			archives.clear();
+		}
+	}
+	
+	private static void forgetMisses() {
+		synchronized (misses) {
+			missGeneration++;
+			misses.clear();
+		}
+	}
+	
+	/**
+	 * Gets an open ZIP file, opening it if needed.  Each call must be
+	 * matched with a call to release.
+	 * 
+	 * @return the archive, or null if there is no such ZIP file
+	 */
+	private static Archive acquire(String path) {
+		synchronized (archives) {
+			Archive a = archives.get(path);
+			if ( a == null && !archives.containsKey(path) ) {
+				a = Archive.open(path);
+				archives.put(path, a);
+				trim();
+			}
+			
+			if ( a != null ) {
+				a.refs++;
+			}
+			
+			return ( a );
+		}
+	}
+	
+	private static void release(Archive a) {
+		synchronized (archives) {
+			a.refs--;
+			if ( a.refs == 0 && !a.cached ) {
+				a.close();
+			}
+		}
+	}
+	
+	/**
+	 * Drops the least recently used ZIP files past the limit.  Missing
+	 * ZIP files are remembered as null, and count towards it too.
+	 */
+	private static void trim() {
+		Iterator<Map.Entry<String, Archive>> it = archives.entrySet().iterator();
+		while ( archives.size() > maxArchives && it.hasNext() ) {
+			Archive a = it.next().getValue();
+			it.remove();
+			
+			if ( a != null ) {
+				a.cached = false;
+				if ( a.refs == 0 ) {
+					a.close();
+				}
+			}
+		}
+	}
+	
 	private static String getRoot(String s) {
 		if ( s != null && s.contains("/") ) {
 			return ( s.substring(0, s.indexOf("/")) );
@@ -94,4 +336,92 @@ public class FileSystem {
 		
 		return ( null );
 	}
+	
+	/**
+	 * A place resources can be found, like a jar, an archive or a
+	 * directory.  Mounts are asked for resources in the order they
+	 * appear in the mount table.
+	 * 
+	 * @author Jared Jonas (bluesun212)
+	 * @version Revision 1
+	 */
+	public static abstract class Mount {
+		/**
+		 * Opens a resource.  This may be called from any thread.
+		 * 
+		 * @param resource the resource name
+		 * @return the resource stream, or null if this mount does not have it
+		 */
+		public abstract InputStream open(String resource);
+	}
+	
+	/**
+	 * An open ZIP file and its entries.
+	 */
+	private static class Archive {
+		private ZipFile zip;
+		private HashMap<String, ZipEntry> entries = new HashMap<String, ZipEntry>();
+		
+		// Guarded by archives
+		private int refs;
+		private boolean cached = true;
+		
+		private static Archive open(String path) {
+			File f = new File(path);
+			if ( !f.isFile() ) {
+				return ( null );
+			}
+			
+			try {
+				Archive a = new Archive();
+				a.zip = new ZipFile(f);
+				
+				Enumeration<? extends ZipEntry> e = a.zip.entries();
+				while ( e.hasMoreElements() ) {
+					ZipEntry ze = e.nextElement();
+					a.entries.put(ze.getName(), ze);
+				}
+				
+				EngineLog.log("Opened " + path + " with " + a.entries.size() + " entries");
+				return ( a );
+			} catch (IOException e) {
+				EngineLog.logException(e);
+				return ( null );
+			}
+		}
+		
+		private void close() {
+			try {
+				zip.close();
+			} catch (IOException e) {
+				
+			}
+		}
+	}
+	
+	/**
+	 * Releases its archive when closed.
+	 */
+	private static class ArchiveInputStream extends FilterInputStream {
+		private Archive archive;
+		
+		private ArchiveInputStream(Archive a, InputStream in) {
+			super(in);
+			archive = a;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				synchronized (this) {
+					if ( archive != null ) {
+						release(archive);
+						archive = null;
+					}
+				}
+			}
+		}
+	}
 }
@@ -20,8 +20,8 @@ import de.jjco.Window;
  * @see GLResource, ResourceManager, Window
  */
 public abstract class GLResource extends Resource {
-	private boolean destroyed = false;
-	private boolean loaded = false;
+	private volatile boolean destroyed = false;
+	private volatile boolean loaded = false;
 	
 	@Override
 	public void load() {
@@ -62,9 +62,9 @@ public abstract class GLResource extends Resource {
 	 */
 	public void destroyWithGL() {
 		doDestroyWithGL();
-		ResourceManager.destroyResource(getResourceID());
 		destroyed = true;
 		loaded = false;
+		ResourceManager.destroyResource(getResourceID());
 	}
 	
 	/**
@@ -72,8 +72,25 @@ public abstract class GLResource extends Resource {
 	 */
 	public void loadWithGL() {
 		doLoadWithGL();
+		loaded = true;
 		ResourceManager.finishLoading(this);
+	}
+	
+	/**
+	 * Loads the next part of the portion of this resource that interacts
+	 * with OpenGL.  The Window calls this each frame, while it has time
+	 * left, until the resource has loaded.
+	 * 
+	 * @return true if the resource has finished loading
+	 */
+	public boolean loadWithGLPart() {
+		if (!doLoadWithGLPart()) {
+			return ( false );
+		}
+		
 		loaded = true;
+		ResourceManager.finishLoading(this);
+		return ( true );
 	}
 	
 	@Override
@@ -92,7 +109,21 @@ public abstract class GLResource extends Resource {
 	protected abstract void doDestroyWithGL();
 	
 	/**
-	 * Called when the GL part of this resource is loading.
+	 * Called when the GL part of this resource is loading.  If it has
+	 * been partly loaded by doLoadWithGLPart, this loads the rest.
 	 */
 	protected abstract void doLoadWithGL();
+	
+	/**
+	 * Called when the GL part of this resource is loading in the
+	 * background, so that resources that take a long time to load, like
+	 * large textures, can be spread over several frames.  By default this
+	 * loads it all at once.
+	 * 
+	 * @return true once the resource has loaded, or false if there is more to do
+	 */
+	protected boolean doLoadWithGLPart() {
+		doLoadWithGL();
+		return ( true );
+	}
 }
@@ -0,0 +1,194 @@
+package de.jjco.resources;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks a group of resources being loaded in the background, such as a
+ * block passed to ResourceManager.loadBlockAsync.  The handle is also a
+ * {@link Future}, which completes once every resource has loaded, both
+ * the part loaded by the worker threads and the part loaded with OpenGL
+ * by the Window.
+ * <p>
+ * A resource that fails to load still counts towards the progress, and
+ * makes get throw an ExecutionException once the rest have loaded.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see ResourceManager#loadBlockAsync(String, int)
+ */
+public class LoadHandle implements Future<Void> {
+	private final String block;
+	private final int priority;
+	private final int total;
+	private final AtomicInteger loaded = new AtomicInteger();
+	private final ConcurrentHashMap<Resource, Boolean> pending = new ConcurrentHashMap<Resource, Boolean>();
+	private final CountDownLatch done = new CountDownLatch(1);
+	private volatile Throwable error;
+	private volatile boolean cancelled;
+	
+	LoadHandle(String id, int p, Resource[] rs) {
+		block = id;
+		priority = p;
+		
+		for (Resource r : rs) {
+			pending.put(r, Boolean.TRUE);
+		}
+		
+		total = pending.size();
+		if (total == 0) {
+			done.countDown();
+		}
+	}
+	
+	/**
+	 * @return the name of the block being loaded, or null if it is not a block
+	 */
+	public String getBlock() {
+		return ( block );
+	}
+	
+	/**
+	 * @return the priority the resources are loaded with
+	 */
+	public int getPriority() {
+		return ( priority );
+	}
+	
+	/**
+	 * @return the number of resources being loaded
+	 */
+	public int getTotal() {
+		return ( total );
+	}
+	
+	/**
+	 * @return the number of resources that have finished loading so far
+	 */
+	public int getLoaded() {
+		return ( loaded.get() );
+	}
+	
+	/**
+	 * Gets how far along the loading is, for loading bars.
+	 * 
+	 * @return a number from 0 to 1
+	 */
+	public float getProgress() {
+		return ( (total == 0) ? 1 : loaded.get() / (float) total );
+	}
+	
+	/**
+	 * Checks whether a resource is still waiting to load.
+	 * 
+	 * @param r the resource
+	 * @return true if it is part of this load and has not finished
+	 */
+	public boolean isPending(Resource r) {
+		return ( pending.containsKey(r) );
+	}
+	
+	/**
+	 * Stops loading any resources that the workers have not started on.
+	 * Resources already being loaded still finish.
+	 * 
+	 * @param mayInterruptIfRunning ignored
+	 * @return false if the load had already finished
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (isDone()) {
+			return ( false );
+		}
+		
+		cancelled = true;
+		done.countDown();
+		return ( true );
+	}
+	
+	@Override
+	public boolean isCancelled() {
+		return ( cancelled );
+	}
+	
+	@Override
+	public boolean isDone() {
+		return ( done.getCount() == 0 );
+	}
+	
+	/**
+	 * Waits for every resource to load.
+	 * 
+	 * @return null
+	 */
+	@Override
+	public Void get() throws InterruptedException, ExecutionException {
+		done.await();
+		return ( report() );
+	}
+	
+	@Override
+	public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException(loaded.get() + " of " + total + " resources have loaded");
+		}
+		
+		return ( report() );
+	}
+	
+	/**
+	 * Waits for every resource to load without being interrupted.  Unlike
+	 * get, this does not report resources that failed to load.
+	 */
+	public void waitFor() {
+		boolean interrupted = false;
+		
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Marks a resource as loaded, or destroyed before it could be.
+	 */
+	void finish(Resource r) {
+		if (pending.remove(r) != null && loaded.incrementAndGet() == total) {
+			done.countDown();
+		}
+	}
+	
+	void fail(Resource r, Throwable t) {
+		if (error == null) {
+			error = t;
+		}
+		
+		finish(r);
+	}
+	
+	private Void report() throws ExecutionException {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		
+		if (error != null) {
+			throw new ExecutionException(error);
+		}
+		
+		return ( null );
+	}
+}
@@ -0,0 +1,84 @@
+package de.jjco.resources;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The worker threads that load resources in the background.  There is
+ * one worker for each processor but one, which is left for the Window.
+ * Work waiting for a worker is started highest priority first, and in
+ * the order it was submitted for equal priorities.
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see ResourceManager#loadBlockAsync(String, int)
+ */
+class LoadPool {
+	static final int WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	
+	private static final Object lock = new Object();
+	private static final AtomicLong sequence = new AtomicLong();
+	private static volatile ThreadPoolExecutor pool;
+	
+	/**
+	 * Runs a task on a worker.
+	 * 
+	 * @param r the task
+	 * @param priority the priority, higher first
+	 */
+	static void submit(Runnable r, int priority) {
+		getPool().execute(new Task(r, priority, sequence.getAndIncrement()));
+	}
+	
+	private static ThreadPoolExecutor getPool() {
+		if ( pool == null ) {
+			synchronized (lock) {
+				if ( pool == null ) {
+					pool = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+						private AtomicInteger count = new AtomicInteger();
+						
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r);
+							t.setName("ToXicity Load Worker " + count.incrementAndGet());
+							t.setDaemon(true);
+							return ( t );
+						}
+					});
+				}
+			}
+		}
+		
+		return ( pool );
+	}
+	
+	private static class Task implements Runnable, Comparable<Task> {
+		private final Runnable task;
+		private final int priority;
+		private final long seq;
+		
+		private Task(Runnable r, int p, long s) {
+			task = r;
+			priority = p;
+			seq = s;
+		}
+		
+		@Override
+		public void run() {
+			task.run();
+		}
+		
+		@Override
+		public int compareTo(Task o) {
+			if ( priority != o.priority ) {
+				return ( (priority > o.priority) ? -1 : 1 );
+			}
+			
+			return ( (seq < o.seq) ? -1 : (seq == o.seq) ? 0 : 1 );
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package de.jjco.resources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.zip.Deflater;
+
+/**
+ * Builds a ReadOnlyDirectory from the files in a directory.  Each file
+ * is stored under its path relative to the directory, with forward
+ * slashes, so a directory packed into res.rod and mounted can be read
+ * from exactly as the directory res itself could.
+ * <p>
+ * Files are compressed only when it makes them smaller, so images and
+ * sounds that are already compressed are stored as is.  This can be
+ * run from the command line:
+ * <pre>java de.jjco.resources.RODPacker &lt;directory&gt; &lt;rod file&gt; [-store]</pre>
+ * 
+ * @author Jared Jonas (bluesun212)
+ * @version Revision 1
+ * @see ReadOnlyDirectory
+ */
+public class RODPacker {
+	private RODPacker() {}
+	
+	/**
+	 * Packs a directory into a ROD file.
+	 * 
+	 * @param dir the directory
+	 * @param out the ROD file, which is overwritten
+	 * @param compress whether files may be compressed
+	 * @return the number of files packed
+	 * @throws IOException if a file could not be read or the ROD written
+	 */
+	public static int pack(File dir, File out, boolean compress) throws IOException {
+		if ( !dir.isDirectory() ) {
+			throw new IOException(dir + " is not a directory");
+		}
+		
+		ArrayList<String> names = new ArrayList<String>();
+		list(dir, "", names);
+		Collections.sort(names);
+		
+		// The index is written once the data is, when the offsets are known
+		int indexEnd = 12;
+		byte[][] encoded = new byte[names.size()][];
+		for ( int i = 0; i < names.size(); i++ ) {
+			encoded[i] = names.get(i).getBytes(ReadOnlyDirectory.UTF8);
+			if ( encoded[i].length > 0xffff ) {
+				throw new IOException("Name too long: " + names.get(i));
+			}
+			
+			indexEnd += 2 + encoded[i].length + 13;
+		}
+		
+		byte[] comp = new byte[names.size()];
+		int[] offsets = new int[names.size()];
+		int[] lengths = new int[names.size()];
+		int[] sizes = new int[names.size()];
+		
+		RandomAccessFile raf = new RandomAccessFile(out, "rw");
+		try {
+			raf.setLength(0);
+			raf.seek(indexEnd);
+			
+			Deflater def = new Deflater(Deflater.BEST_COMPRESSION);
+			try {
+				for ( int i = 0; i < names.size(); i++ ) {
+					byte[] b = read(new File(dir, names.get(i)));
+					sizes[i] = b.length;
+					
+					if ( compress && b.length > 0 ) {
+						byte[] d = deflate(def, b);
+						if ( d.length < b.length ) {
+							b = d;
+							comp[i] = ReadOnlyDirectory.COMPRESSION_DEFLATE;
+						}
+					}
+					
+					if ( raf.getFilePointer() + b.length > Integer.MAX_VALUE ) {
+						throw new IOException(out + " would be too large to map");
+					}
+					
+					offsets[i] = (int) raf.getFilePointer();
+					lengths[i] = b.length;
+					raf.write(b);
+				}
+			} finally {
+				def.end();
+			}
+			
+			raf.seek(0);
+			raf.writeInt(ReadOnlyDirectory.MAGIC);
+			raf.writeInt(ReadOnlyDirectory.VERSION);
+			raf.writeInt(names.size());
+			
+			for ( int i = 0; i < names.size(); i++ ) {
+				raf.writeShort(encoded[i].length);
+				raf.write(encoded[i]);
+				raf.writeByte(comp[i]);
+				raf.writeInt(offsets[i]);
+				raf.writeInt(lengths[i]);
+				raf.writeInt(sizes[i]);
+			}
+		} finally {
+			raf.close();
+		}
+		
+		return ( names.size() );
+	}
+	
+	private static void list(File dir, String prefix, ArrayList<String> names) {
+		File[] files = dir.listFiles();
+		if ( files == null ) {
+			return;
+		}
+		
+		for ( File f : files ) {
+			if ( f.isDirectory() ) {
+				list(f, prefix + f.getName() + "/", names);
+			} else {
+				names.add(prefix + f.getName());
+			}
+		}
+	}
+	
+	private static byte[] read(File f) throws IOException {
+		InputStream is = new FileInputStream(f);
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream((int) Math.min(f.length(), Integer.MAX_VALUE - 8));
+			byte[] buf = new byte[8192];
+			for ( int n; (n = is.read(buf)) != -1; ) {
+				bos.write(buf, 0, n);
+			}
+			
+			return ( bos.toByteArray() );
+		} finally {
+			is.close();
+		}
+	}
+	
+	private static byte[] deflate(Deflater def, byte[] b) {
+		def.reset();
+		def.setInput(b);
+		def.finish();
+		
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(b.length);
+		byte[] buf = new byte[8192];
+		while ( !def.finished() ) {
+			bos.write(buf, 0, def.deflate(buf));
+		}
+		
+		return ( bos.toByteArray() );
+	}
+	
+	/**
+	 * Packs a directory from the command line.
+	 * 
+	 * @param args the directory, the ROD file, and optionally -store to
+	 * leave every file uncompressed
+	 */
+	public static void main(String[] args) {
+		if ( args.length < 2 ) {
+			System.err.println("Usage: RODPacker <directory> <rod file> [-store]");
+			System.exit(1);
+		}
+		
+		boolean compress = !(args.length > 2 && args[2].equals("-store"));
+		try {
+			int n = pack(new File(args[0]), new File(args[1]), compress);
+			System.out.println("Packed " + n + " files into " + args[1]);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -1,34 +1,305 @@
 package de.jjco.resources;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import de.jjco.EngineLog;
 
 /**
  * A ReadOnly Directory (ROD) is a custom file that stores a file system in a compressed format.
- * Currently this class is empty.
+ * It is opened once and mapped into memory, so reading a resource from it never opens a file.
+ * <p>
+ * A ROD starts with a header: the magic number, the format version and
+ * the number of entries.  An index follows, sorted by name, giving each
+ * entry's name, compression, offset from the start of the file, stored
+ * length and uncompressed size.  The entries' data follows the index.
+ * All numbers are big endian.  RODs are made with the RODPacker.
  * 
  * @author Jared Jonas (bluesun212)
  * @version Revision 1
  * @see FileSystem
+ * @see RODPacker
  */
-public class ReadOnlyDirectory { // TODO
+public class ReadOnlyDirectory {
+	/**
+	 * The first four bytes of every ROD, "ROD" followed by a zero.
+	 */
+	public static final int MAGIC = 0x524F4400;
+	
+	/**
+	 * The format version this class reads.
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * The entry is stored as is.
+	 */
+	public static final int COMPRESSION_NONE = 0;
+	
+	/**
+	 * The entry is compressed with deflate.
+	 */
+	public static final int COMPRESSION_DEFLATE = 1;
+	
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private File file;
+	private ByteBuffer data;
+	
+	// The index, sorted by name
+	private String[] names;
+	private byte[] compression;
+	private int[] offsets;
+	private int[] lengths;
+	private int[] sizes;
+	
+	private ReadOnlyDirectory(File f, ByteBuffer buf) throws IOException {
+		file = f;
+		data = buf;
+		
+		if ( buf.getInt() != MAGIC ) {
+			throw new IOException(f + " is not a ROD");
+		}
+		
+		int version = buf.getInt();
+		if ( version != VERSION ) {
+			throw new IOException(f + " is ROD version " + version + ", expected " + VERSION);
+		}
+		
+		int n = buf.getInt();
+		names = new String[n];
+		compression = new byte[n];
+		offsets = new int[n];
+		lengths = new int[n];
+		sizes = new int[n];
+		
+		for ( int i = 0; i < n; i++ ) {
+			byte[] name = new byte[buf.getShort() & 0xffff];
+			buf.get(name);
+			names[i] = new String(name, UTF8);
+			compression[i] = buf.get();
+			offsets[i] = buf.getInt();
+			lengths[i] = buf.getInt();
+			sizes[i] = buf.getInt();
+			
+			if ( offsets[i] < 0 || lengths[i] < 0 || (long) offsets[i] + lengths[i] > buf.capacity() ) {
+				throw new IOException(names[i] + " lies outside of " + f);
+			}
+		}
+	}
+	
+	/**
+	 * @return the file this ROD was opened from
+	 */
+	public File getFile() {
+		return ( file );
+	}
+	
+	/**
+	 * @return the number of resources in this ROD
+	 */
+	public int size() {
+		return ( names.length );
+	}
+	
+	/**
+	 * @return the names of every resource in this ROD, in sorted order
+	 */
+	public String[] getNames() {
+		return ( names.clone() );
+	}
+	
+	/**
+	 * Checks whether this ROD has a resource with the specified name.
+	 * 
+	 * @param name the resource name
+	 * @return true if it does
+	 */
+	public boolean contains(String name) {
+		return ( Arrays.binarySearch(names, name) >= 0 );
+	}
+	
 	/**
 	 * Gets a resource from this ROD with the specified name.
 	 * 
 	 * @param name the resource name
-	 * @return the input stream for the resource
+	 * @return the input stream for the resource, or null if there is none
 	 */
 	public InputStream getResource(String name) {
-		return ( null );
+		int i = Arrays.binarySearch(names, name);
+		if ( i < 0 ) {
+			return ( null );
+		}
+		
+		InputStream is = new BufferInputStream(slice(i));
+		if ( compression[i] == COMPRESSION_DEFLATE ) {
+			is = new EntryInputStream(is, Math.max(512, Math.min(lengths[i], 8192)));
+		}
+		
+		return ( is );
 	}
 	
 	/**
-	 * Creates a ROD object for interfacing with the file.
+	 * Gets the contents of a resource from this ROD with the specified
+	 * name.  Stored resources are returned as read only views of the
+	 * mapped file, so nothing is copied; compressed ones are inflated
+	 * into a new buffer.
+	 * 
+	 * @param name the resource name
+	 * @return the buffer, or null if there is no such resource or it is corrupt
+	 */
+	public ByteBuffer getBuffer(String name) {
+		int i = Arrays.binarySearch(names, name);
+		if ( i < 0 ) {
+			return ( null );
+		}
+		
+		ByteBuffer buf = slice(i);
+		if ( compression[i] != COMPRESSION_DEFLATE ) {
+			return ( buf );
+		}
+		
+		byte[] in = new byte[lengths[i]];
+		byte[] out = new byte[sizes[i]];
+		buf.get(in);
+		
+		Inflater inf = new Inflater();
+		try {
+			inf.setInput(in);
+			int n = 0;
+			while ( n < out.length && !inf.finished() ) {
+				int r = inf.inflate(out, n, out.length - n);
+				if ( r == 0 && (inf.needsInput() || inf.needsDictionary()) ) {
+					break;
+				}
+				
+				n += r;
+			}
+			
+			if ( n != out.length ) {
+				EngineLog.logException(name + " in " + file + " is truncated");
+				return ( null );
+			}
+		} catch (DataFormatException e) {
+			EngineLog.logException(e);
+			return ( null );
+		} finally {
+			inf.end();
+		}
+		
+		return ( ByteBuffer.wrap(out) );
+	}
+	
+	private ByteBuffer slice(int i) {
+		ByteBuffer buf = data.duplicate();
+		buf.limit(offsets[i] + lengths[i]);
+		buf.position(offsets[i]);
+		return ( buf.slice() );
+	}
+	
+	/**
+	 * Creates a ROD object for interfacing with the file.  The file is
+	 * mapped into memory and its index read; it is not kept open.
 	 * 
 	 * @param f the file representing the ROD
-	 * @return the ROD object for this file
+	 * @return the ROD object for this file, or null if it could not be read
 	 */
 	public static ReadOnlyDirectory make(File f) {
-		return ( new ReadOnlyDirectory() );
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(f, "r");
+			FileChannel fc = raf.getChannel();
+			if ( fc.size() > Integer.MAX_VALUE ) {
+				throw new IOException(f + " is too large to map");
+			}
+			
+			ByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()).asReadOnlyBuffer();
+			return ( new ReadOnlyDirectory(f, buf) );
+		} catch (IOException e) {
+			EngineLog.logException(e);
+		} catch (RuntimeException e) {
+			EngineLog.logException(f + " is corrupt: " + e);
+		} finally {
+			if ( raf != null ) {
+				try {
+					raf.close();
+				} catch (IOException e) {}
+			}
+		}
+		
+		return ( null );
+	}
+	
+	/**
+	 * Inflates a compressed entry, and frees its Inflater when closed
+	 * rather than leaving it to be finalized.
+	 */
+	private static class EntryInputStream extends InflaterInputStream {
+		private boolean closed;
+		
+		private EntryInputStream(InputStream in, int size) {
+			super(in, new Inflater(), size);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if ( !closed ) {
+				closed = true;
+				inf.end();
+				super.close();
+			}
+		}
+	}
+	
+	/**
+	 * Reads from a slice of the mapped file.
+	 */
+	private static class BufferInputStream extends InputStream {
+		private ByteBuffer buf;
+		
+		private BufferInputStream(ByteBuffer b) {
+			buf = b;
+		}
+		
+		@Override
+		public int read() {
+			return ( buf.hasRemaining() ? buf.get() & 0xff : -1 );
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if ( len == 0 ) {
+				return ( 0 );
+			}
+			
+			if ( !buf.hasRemaining() ) {
+				return ( -1 );
+			}
+			
+			len = Math.min(len, buf.remaining());
+			buf.get(b, off, len);
+			return ( len );
+		}
+		
+		@Override
+		public long skip(long n) {
+			int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+			buf.position(buf.position() + k);
+			return ( k );
+		}
+		
+		@Override
+		public int available() {
+			return ( buf.remaining() );
+		}
 	}
 }
@@ -1,5 +1,7 @@
 package de.jjco.resources;
 
+import java.util.ArrayList;
+
 /**
  * A resource is the bass class of all things that are loaded
  * into memory and unloaded at some point.  Each resource
@@ -11,11 +13,16 @@ package de.jjco.resources;
  * @see GLResource, ResourceManager
  */
 public abstract class Resource {
-	private boolean destroyed = false;
-	private boolean loaded = false;
+	private volatile boolean destroyed = false;
+	private volatile boolean loaded = false;
 	private String name = null;
 	private int rid;
 	
+	// Kept by ResourceManager, guarded by this
+	boolean complete;
+	ArrayList<ResourceManager.Block> blocks = new ArrayList<ResourceManager.Block>(1);
+	ArrayList<Runnable> listeners;
+	
 	/**
 	 * Creates a resource.
 	 */
@@ -32,9 +39,9 @@ public abstract class Resource {
 		}
 		
 		doDestroy();
-		ResourceManager.destroyResource(rid);
 		destroyed = true;
 		loaded = false;
+		ResourceManager.destroyResource(rid);
 	}
 	
 	/**
@@ -46,8 +53,8 @@ public abstract class Resource {
 		}
 		
 		doLoad();
-		ResourceManager.finishLoading(this);
 		loaded = true;
+		ResourceManager.finishLoading(this);
 	}
 	
 	/**
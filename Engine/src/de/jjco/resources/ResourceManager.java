@@ -1,7 +1,17 @@
 package de.jjco.resources;
 
+import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.jjco.EngineLog;
+import de.jjco.Window;
 
 /**
  * The ResourceManager is a large class intended to control
@@ -14,6 +24,17 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * 3. To collect data about loading (which may be happening
  * in a different thread), like the amount of resources that
  * have been loaded, and the current resource that is being loaded.
+ * <p>
+ * Resources are loaded by a pool of worker threads, so decoding images,
+ * sounds and fonts runs on every processor at once.  The parts of
+ * GLResources that need OpenGL are then loaded by the Window.  Blocks
+ * can be loaded in the background with loadBlockAsync, which returns a
+ * LoadHandle for following their progress.
+ * <p>
+ * The Window loads the GL parts of resources a few at a time each
+ * frame, highest priority first, and stops once it has spent its time
+ * budget.  Whatever is left waits for the next frame, so loading in the
+ * background does not drop frames.
  * 
  * @author Jared Jonas (bluesun212)
  * @version Revision 1
@@ -24,13 +45,34 @@ public class ResourceManager {
 	private static ConcurrentLinkedQueue<String> activeBlocks = new ConcurrentLinkedQueue<String>();
 	private static ConcurrentHashMap<Integer, Resource> res = new ConcurrentHashMap<Integer, Resource>();
 	private static ConcurrentHashMap<String, Resource> labels = new ConcurrentHashMap<String, Resource>();
-	private static ConcurrentHashMap<String, ConcurrentLinkedQueue<Resource>> blocks = new ConcurrentHashMap<String, ConcurrentLinkedQueue<Resource>>();
+	private static ConcurrentHashMap<String, Block> blocks = new ConcurrentHashMap<String, Block>();
 	
-	private static ConcurrentLinkedQueue<GLResource> glLoad = new ConcurrentLinkedQueue<GLResource>();
+	private static PriorityBlockingQueue<QueuedLoad> glLoad = new PriorityBlockingQueue<QueuedLoad>();
+	private static ConcurrentHashMap<GLResource, QueuedLoad> glQueued = new ConcurrentHashMap<GLResource, QueuedLoad>();
 	private static ConcurrentLinkedQueue<GLResource> glDestroy = new ConcurrentLinkedQueue<GLResource>();
+	private static AtomicLong glSequence = new AtomicLong();
+	private static volatile long glBudget = 4000000L;
+	
+	// Each Window drains the queues on its own thread, so they take turns
+	private static final Object glLock = new Object();
+	
+	// The load being spread over several frames, guarded by glLock
+	private static QueuedLoad glCurrent;
 	
 	private static ConcurrentLinkedQueue<Resource> loaded = new ConcurrentLinkedQueue<Resource>();
-	private static Resource currentResource = null;
+	private static volatile Resource currentResource = null;
+	
+	// Resources a worker has started on that have not finished loading, and their priorities
+	private static ConcurrentHashMap<Resource, Integer> loading = new ConcurrentHashMap<Resource, Integer>();
+	private static CopyOnWriteArrayList<LoadHandle> handles = new CopyOnWriteArrayList<LoadHandle>();
+	
+	// The resources each thread is loading, innermost last
+	private static ThreadLocal<ArrayList<Resource>> loadingHere = new ThreadLocal<ArrayList<Resource>>() {
+		@Override
+		protected ArrayList<Resource> initialValue() {
+			return ( new ArrayList<Resource>(2) );
+		}
+	};
 	
 	/**
 	 * Creates a resource.  This is called by Resource, so
@@ -44,13 +86,16 @@ public class ResourceManager {
 		res.put(rid, resource);
 		
 		for (String s : activeBlocks) {
-			ConcurrentLinkedQueue<Resource> block = blocks.get(s);
+			Block block = blocks.get(s);
 			if (block == null) {
-				block = new ConcurrentLinkedQueue<Resource>();
-				blocks.put(s, block);
+				Block b = new Block();
+				block = blocks.putIfAbsent(s, b);
+				if (block == null) {
+					block = b;
+				}
 			}
 			
-			blocks.get(s).add(resource);
+			block.add(resource);
 		}
 		
 		return ( rid );
@@ -69,11 +114,26 @@ public class ResourceManager {
 				labels.remove(r.getName());
 			}
 			
-			for (ConcurrentLinkedQueue<Resource> block : blocks.values()) {
-				if (block.contains(r)) {
-					block.remove(r);
+			// Destroyed resources count as done, then leave their blocks
+			complete(r);
+			synchronized (r) {
+				for (Block b : r.blocks) {
+					b.remove(r);
 				}
+				
+				r.blocks.clear();
 			}
+			
+			// Nothing waiting on it will see it load now
+			if (r instanceof GLResource) {
+				QueuedLoad q = glQueued.remove(r);
+				if (q != null) {
+					q.dropped = true;
+				}
+			}
+			
+			loading.remove(r);
+			notifyHandles(r, null);
 		}
 	}
 	
@@ -117,13 +177,69 @@ public class ResourceManager {
 	 * @param r the resource
 	 */
 	public static void blockUntilResourceLoads(Resource r) {
-		while (!r.isLoaded() && !r.isDestroyed()) {
-			try {
-				Thread.sleep(1l);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		blockUntilResourceLoads(r, 0, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Blocks the current thread until the resource has
+	 * loaded, or the time runs out.
+	 * 
+	 * @param r the resource
+	 * @param timeout the longest time to wait, or 0 to wait forever
+	 * @param unit the unit of the timeout
+	 * @return true if the resource loaded, or was destroyed
+	 */
+	public static boolean blockUntilResourceLoads(Resource r, long timeout, TimeUnit unit) {
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		boolean interrupted = false;
+		
+		synchronized (r) {
+			while (!r.isLoaded() && !r.isDestroyed()) {
+				long left = end - System.nanoTime();
+				if (timeout > 0 && left <= 0) {
+					break;
+				}
+				
+				try {
+					if (timeout > 0) {
+						TimeUnit.NANOSECONDS.timedWait(r, left);
+					} else {
+						r.wait();
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		return ( r.isLoaded() || r.isDestroyed() );
+	}
+	
+	/**
+	 * Runs a callback once the resource has loaded, or been destroyed.
+	 * It is run on the thread that finished loading the resource, or
+	 * right away on this thread if that has already happened.
+	 * 
+	 * @param r the resource
+	 * @param callback the callback
+	 */
+	public static void onResourceLoaded(Resource r, Runnable callback) {
+		synchronized (r) {
+			if (!r.complete) {
+				if (r.listeners == null) {
+					r.listeners = new ArrayList<Runnable>(1);
+				}
+				
+				r.listeners.add(callback);
+				return;
 			}
 		}
+		
+		callback.run();
 	}
 	
 	// Block functions
@@ -156,8 +272,9 @@ public class ResourceManager {
 	 * @param id the block's name
 	 */
 	public static void destroyBlock(String id) {
-		if ( isBlock(id) ) {
-			for (Resource r : blocks.get(id)) {
+		Block b = blocks.get(id);
+		if ( b != null ) {
+			for (Resource r : b.members) {
 				r.destroy();
 			}
 			
@@ -166,21 +283,44 @@ public class ResourceManager {
 	}
 	
 	/**
-	 * Loads all resources in the block.
+	 * Loads all resources in the block, using every worker thread and the
+	 * calling thread, which may be a worker itself.  This returns once
+	 * they are done, waiting as well for resources another thread had
+	 * already started loading.  If it is called from the rendering
+	 * thread, the GL parts of the block are loaded before it returns,
+	 * otherwise they are left for the Window.
 	 * 
 	 * @param id the block's name
 	 */
 	public static void loadBlock(String id) {
 		if ( isBlock(id) ) {
-			for (Resource r : blocks.get(id)) {
-				currentResource = r;
-				r.load();
-			}
-			
-			currentResource = null;
+			loadNow(getResourcesInBlock(id));
 		}
 	}
 	
+	/**
+	 * Starts loading all resources in the block in the background.
+	 * 
+	 * @param id the block's name
+	 * @return the handle to follow the loading with
+	 */
+	public static LoadHandle loadBlockAsync(String id) {
+		return ( loadBlockAsync(id, 0) );
+	}
+	
+	/**
+	 * Starts loading all resources in the block in the background.
+	 * Resources of higher priority loads are started first.
+	 * 
+	 * @param id the block's name
+	 * @param priority the priority
+	 * @return the handle to follow the loading with
+	 */
+	public static LoadHandle loadBlockAsync(String id, int priority) {
+		Resource[] rs = getResourcesInBlock(id);
+		return ( loadAsync(id, priority, (rs == null) ? new Resource[0] : rs) );
+	}
+	
 	/**
 	 * Checks to see if a block with the name exists.
 	 * 
@@ -199,17 +339,8 @@ public class ResourceManager {
 	 * @return whether all resources have been loaded
 	 */
 	public static boolean isBlockLoaded(String id) {
-		if (isBlock(id)) {
-			for (Resource r : blocks.get(id)) {
-				if (!r.isLoaded() && !r.isDestroyed()) {
-					return (false);
-				}
-			}
-			
-			return (true);
-		}
-		
-		return (false);
+		Block b = blocks.get(id);
+		return ( b != null && b.pending.get() == 0 );
 	}
 	
 	/**
@@ -219,11 +350,19 @@ public class ResourceManager {
 	 * @return the number of resources in a block
 	 */
 	public static int getResourcesInBlockSize(String id) {
-		if (blocks.get(id) != null) {
-			return ( blocks.get(id).size() );
-		} else {
-			return ( 0 );
-		}
+		Block b = blocks.get(id);
+		return ( (b == null) ? 0 : b.size.get() );
+	}
+	
+	/**
+	 * Gets the number of resources in a block that have not loaded yet.
+	 * 
+	 * @param id the block's name
+	 * @return the number of resources left to load
+	 */
+	public static int getUnloadedResourcesInBlockSize(String id) {
+		Block b = blocks.get(id);
+		return ( (b == null) ? 0 : b.pending.get() );
 	}
 	
 	/**
@@ -233,9 +372,9 @@ public class ResourceManager {
 	 * @return the resources in the block
 	 */
 	public static Resource[] getResourcesInBlock(String id) {
-		if (blocks.get(id) != null) {
-			Resource[] ret = new Resource[blocks.get(id).size()];
-			return ( blocks.get(id).toArray(ret) );
+		Block b = blocks.get(id);
+		if (b != null) {
+			return ( b.members.toArray(new Resource[0]) );
 		} else {
 			return ( null );
 		}
@@ -243,18 +382,83 @@ public class ResourceManager {
 	
 	/**
 	 * Blocks the current thread until all
-	 * resources in the block load.
+	 * resources in the block load.  Returns
+	 * right away if there is no such block.
 	 * 
 	 * @param id the block's name.
 	 */
 	public static void blockUntilBlockLoads(String id) {
-		while (!isBlockLoaded(id)) {
-			try {
-				Thread.sleep(1l);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		blockUntilBlockLoads(id, 0, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Blocks the current thread until all resources
+	 * in the block load, or the time runs out.
+	 * 
+	 * @param id the block's name
+	 * @param timeout the longest time to wait, or 0 to wait forever
+	 * @param unit the unit of the timeout
+	 * @return true if the block has loaded
+	 */
+	public static boolean blockUntilBlockLoads(String id, long timeout, TimeUnit unit) {
+		Block b = blocks.get(id);
+		if (b == null) {
+			return ( false );
+		}
+		
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		boolean interrupted = false;
+		
+		synchronized (b) {
+			while (b.pending.get() > 0) {
+				long left = end - System.nanoTime();
+				if (timeout > 0 && left <= 0) {
+					break;
+				}
+				
+				try {
+					if (timeout > 0) {
+						TimeUnit.NANOSECONDS.timedWait(b, left);
+					} else {
+						b.wait();
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
 			}
 		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		return ( b.pending.get() == 0 );
+	}
+	
+	/**
+	 * Runs a callback once every resource in the block has loaded.  It
+	 * is run on the thread that finished loading the last resource, or
+	 * right away on this thread if the block has already loaded.
+	 * 
+	 * @param id the block's name
+	 * @param callback the callback
+	 * @return false if there is no such block
+	 */
+	public static boolean onBlockLoaded(String id, Runnable callback) {
+		Block b = blocks.get(id);
+		if (b == null) {
+			return ( false );
+		}
+		
+		synchronized (b) {
+			if (b.pending.get() > 0) {
+				b.listeners.add(callback);
+				return ( true );
+			}
+		}
+		
+		callback.run();
+		return ( true );
 	}
 	
 	// All resources
@@ -268,16 +472,193 @@ public class ResourceManager {
 	}
 	
 	/**
-	 * Loads all unloaded resources.
+	 * Loads all unloaded resources, the same way loadBlock does.
 	 */
 	public static void loadAllResources() {
-		for (Resource r : res.values()) {
-			currentResource = r;
-			r.load();
+		loadNow(res.values().toArray(new Resource[0]));
+	}
+	
+	/**
+	 * Starts loading all unloaded resources in the background.
+	 * 
+	 * @param priority the priority
+	 * @return the handle to follow the loading with
+	 */
+	public static LoadHandle loadAllResourcesAsync(int priority) {
+		return ( loadAsync(null, priority, res.values().toArray(new Resource[0])) );
+	}
+	
+	private static LoadHandle loadAsync(String id, final int priority, Resource[] rs) {
+		LoadHandle h = new LoadHandle(id, priority, rs);
+		handles.add(h);
+		
+		for (final Resource r : rs) {
+			if (r.isLoaded() || r.isDestroyed()) {
+				h.finish(r);
+			} else {
+				LoadPool.submit(new Runnable() {
+					@Override
+					public void run() {
+						if (isWanted(r)) {
+							load(r, priority);
+						}
+					}
+				}, priority);
+			}
+		}
+		
+		if (h.isDone()) {
+			handles.remove(h);
+		}
+		
+		return ( h );
+	}
+	
+	private static void loadNow(final Resource[] rs) {
+		final AtomicInteger next = new AtomicInteger();
+		final CountDownLatch left = new CountDownLatch(rs.length);
+		Runnable claim = new Runnable() {
+			@Override
+			public void run() {
+				int i;
+				while ((i = next.getAndIncrement()) < rs.length) {
+					try {
+						load(rs[i], Integer.MAX_VALUE);
+					} finally {
+						left.countDown();
+					}
+				}
+			}
+		};
+		
+		// This thread loads too, so it finishes even when every worker is busy, or it is a worker itself
+		for (int i = Math.min(LoadPool.WORKERS, rs.length - 1); i > 0; i--) {
+			LoadPool.submit(claim, Integer.MAX_VALUE);
+		}
+		
+		claim.run();
+		
+		boolean interrupted = false;
+		while (true) {
+			try {
+				left.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		// Some may have been started by another thread, as for an earlier loadBlockAsync
+		ArrayList<Resource> here = loadingHere.get();
+		for (Resource r : rs) {
+			// Loads this thread is in the middle of, as when a resource loads its own block, can't be waited on
+			if (here.contains(r)) {
+				continue;
+			}
+			
+			synchronized (r) {
+				while (isBeingLoaded(r)) {
+					try {
+						r.wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+		}
+		
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		// The workers queued the GL parts, which can be loaded right away here
+		if (Window.getCurrentWindow() != null) {
+			synchronized (glLock) {
+				for (Resource r : rs) {
+					QueuedLoad q = glQueued.remove(r);
+					if (q != null && !q.dropped) {
+						q.dropped = true;
+						((GLResource) r).loadWithGL();
+					}
+				}
+			}
 		}
 		
 		currentResource = null;
 	}
+	
+	/**
+	 * Loads a resource on the current thread, unless another thread is
+	 * already loading it.
+	 */
+	private static void load(Resource r, int priority) {
+		if (r.isLoaded()) {
+			notifyHandles(r, null);
+			return;
+		}
+		
+		if (loading.putIfAbsent(r, priority) != null) {
+			return;
+		}
+		
+		ArrayList<Resource> here = loadingHere.get();
+		here.add(r);
+		currentResource = r;
+		try {
+			r.load();
+		} catch (Throwable t) {
+			EngineLog.logException("Could not load " + r + ": " + t);
+			loading.remove(r);
+			wake(r);
+			notifyHandles(r, t);
+		} finally {
+			here.remove(here.size() - 1);
+		}
+	}
+	
+	/**
+	 * Checks whether a thread is loading a resource.  Once only its GL
+	 * part is left, it is waiting for the Window instead.
+	 */
+	private static boolean isBeingLoaded(Resource r) {
+		return ( loading.containsKey(r) && !r.isLoaded() && !r.isDestroyed() && !glQueued.containsKey(r) );
+	}
+	
+	/**
+	 * Wakes the threads in loadNow waiting on a resource.
+	 */
+	private static void wake(Resource r) {
+		synchronized (r) {
+			r.notifyAll();
+		}
+	}
+	
+	/**
+	 * Checks whether a load that has not been cancelled is waiting on a resource.
+	 */
+	private static boolean isWanted(Resource r) {
+		for (LoadHandle h : handles) {
+			if (!h.isCancelled() && h.isPending(r)) {
+				return ( true );
+			}
+		}
+		
+		return ( false );
+	}
+	
+	private static void notifyHandles(Resource r, Throwable t) {
+		for (LoadHandle h : handles) {
+			if (t == null) {
+				h.finish(r);
+			} else {
+				h.fail(r, t);
+			}
+			
+			if (h.isDone()) {
+				handles.remove(h);
+			}
+		}
+	}
 
 	// OpenGL Deferred loading
 	/**
@@ -288,28 +669,86 @@ public class ResourceManager {
 	 * @param glr the GLResource
 	 */
 	public static void addToGLResourceLoadingQueue(GLResource glr) {
-		glLoad.add(glr);
+		Integer p = loading.get(glr);
+		QueuedLoad q = new QueuedLoad(glr, (p == null) ? 0 : p, glSequence.getAndIncrement());
+		QueuedLoad old = glQueued.put(glr, q);
+		if (old != null) {
+			old.dropped = true;
+		}
+		
+		glLoad.add(q);
+		wake(glr);
 	}
 	
 	/**
-	 * Loads and destroys all GLResources
-	 * waiting in their respective queues.
+	 * Destroys and loads the GLResources waiting in their respective
+	 * queues, until the time budget runs out.  At least one resource
+	 * is loaded, or partly loaded, each call.  This is called by each
+	 * Window each frame; when several are open, they take turns.
 	 */
 	public static void doGLLoadingAndDestroying() {
-		synchronized (glLoad) {
-			for (GLResource glr : glLoad) {
-				glr.loadWithGL();
-				glLoad.remove(glr);
-			}
-		}
-		
-		synchronized (glDestroy) {
-			for (GLResource glr : glDestroy) {
+		synchronized (glLock) {
+			long budget = glBudget;
+			long end = System.nanoTime() + budget;
+			
+			// Destroy first, to free memory for what is loaded
+			GLResource glr;
+			while ((budget <= 0 || System.nanoTime() - end < 0) && (glr = glDestroy.poll()) != null) {
 				glr.destroyWithGL();
-				glDestroy.remove(glr);
 			}
+			
+			do {
+				QueuedLoad q = glCurrent;
+				if (q == null) {
+					q = glLoad.poll();
+					if (q == null) {
+						break;
+					}
+					
+					glCurrent = q;
+				}
+				
+				try {
+					if (q.dropped || q.resource.isLoaded() || q.resource.loadWithGLPart()) {
+						glCurrent = null;
+						glQueued.remove(q.resource, q);
+					}
+				} catch (RuntimeException e) {
+					EngineLog.logException(e);
+					glCurrent = null;
+					glQueued.remove(q.resource, q);
+					loading.remove(q.resource);
+					wake(q.resource);
+					notifyHandles(q.resource, e);
+				}
+			} while (budget <= 0 || System.nanoTime() - end < 0);
 		}
 	}
+	
+	/**
+	 * Sets how long the Window spends loading and destroying GLResources
+	 * each frame.  Large resources are loaded in parts, so a frame goes
+	 * little over the budget even for them.
+	 * 
+	 * @param nanos the time in nanoseconds, or 0 to load everything waiting each frame
+	 */
+	public static void setGLLoadingBudget(long nanos) {
+		glBudget = nanos;
+	}
+	
+	/**
+	 * @return how long the Window spends loading GLResources each frame, in nanoseconds
+	 */
+	public static long getGLLoadingBudget() {
+		return ( glBudget );
+	}
+	
+	/**
+	 * @return the number of GLResources waiting for the Window to load them
+	 */
+	public static int getGLLoadingQueueSize() {
+		return ( glQueued.size() );
+	}
 
 	/**
 	 * Adds the resource to the destroying queue.
@@ -334,6 +773,41 @@ public class ResourceManager {
 		if (getResourceByID(id.getResourceID()) != null) {
 			loaded.add(id);
 		}
+		
+		loading.remove(id);
+		complete(id);
+		notifyHandles(id, null);
+	}
+	
+	/**
+	 * Wakes everything waiting on a resource that has loaded or been
+	 * destroyed, and counts it as done in its blocks the first time.
+	 */
+	private static void complete(Resource r) {
+		Block[] bs;
+		ArrayList<Runnable> fire;
+		
+		synchronized (r) {
+			r.notifyAll();
+			if (r.complete) {
+				return;
+			}
+			
+			r.complete = true;
+			bs = r.blocks.toArray(new Block[r.blocks.size()]);
+			fire = r.listeners;
+			r.listeners = null;
+		}
+		
+		for (Block b : bs) {
+			b.countDown();
+		}
+		
+		if (fire != null) {
+			for (Runnable c : fire) {
+				c.run();
+			}
+		}
 	}
 	
 	/**
@@ -372,4 +846,86 @@ public class ResourceManager {
 	public static Resource getCurrentResource() {
 		return ( currentResource );
 	}
+	
+	/**
+	 * A GLResource waiting for the Window to load it.
+	 */
+	private static class QueuedLoad implements Comparable<QueuedLoad> {
+		private final GLResource resource;
+		private final int priority;
+		private final long seq;
+		
+		// Set when it was loaded another way, or destroyed
+		private volatile boolean dropped;
+		
+		private QueuedLoad(GLResource r, int p, long s) {
+			resource = r;
+			priority = p;
+			seq = s;
+		}
+		
+		@Override
+		public int compareTo(QueuedLoad o) {
+			if ( priority != o.priority ) {
+				return ( (priority > o.priority) ? -1 : 1 );
+			}
+			
+			return ( (seq < o.seq) ? -1 : (seq == o.seq) ? 0 : 1 );
+		}
+	}
+	
+	/**
+	 * The resources in a block, and how many of them have not loaded.
+	 * Each resource counts towards the block until it loads or is
+	 * destroyed, so the block knows it has loaded without checking them.
+	 */
+	static class Block {
+		private final ConcurrentLinkedQueue<Resource> members = new ConcurrentLinkedQueue<Resource>();
+		private final AtomicInteger size = new AtomicInteger();
+		private final AtomicInteger pending = new AtomicInteger();
+		
+		// Guarded by this
+		private final ArrayList<Runnable> listeners = new ArrayList<Runnable>();
+		
+		private void add(Resource r) {
+			synchronized (r) {
+				r.blocks.add(this);
+				members.add(r);
+				size.incrementAndGet();
+				if (!r.complete) {
+					pending.incrementAndGet();
+				}
+			}
+		}
+		
+		/**
+		 * Must be called while holding the resource's lock.
+		 */
+		private void remove(Resource r) {
+			if (members.remove(r)) {
+				size.decrementAndGet();
+			}
+		}
+		
+		private void countDown() {
+			if (pending.decrementAndGet() != 0) {
+				return;
+			}
+			
+			Runnable[] fire = null;
+			synchronized (this) {
+				notifyAll();
+				if (pending.get() == 0 && !listeners.isEmpty()) {
+					fire = listeners.toArray(new Runnable[listeners.size()]);
+					listeners.clear();
+				}
+			}
+			
+			if (fire != null) {
+				for (Runnable c : fire) {
+					c.run();
+				}
+			}
+		}
+	}
 }